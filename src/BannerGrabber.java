@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// What the port engine does with a freshly opened connection before closing it: wait briefly
+// for a server-first banner (SSH, FTP, SMTP...), otherwise send a trigger request that most
+// text protocols answer, and classify whatever comes back. Ports where the client always
+// speaks first skip the passive wait and get a GET for the root page instead, read up to a
+// larger cap so the page title can be parsed from the reply. Ports whose certificate the TLS
+// engine fetches get nothing: a plaintext request there only draws a "400 The plain HTTP
+// request was sent to HTTPS port" that would pass for the port's service and page.
+final class BannerGrabber {
+    static final int IDLE_MILLIS = 50; // Quiet time that ends a banner after its first bytes
+    private static final byte[] TRIGGER = "HEAD / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    // Usual HTTP ports: nothing is said until the client sends a request
+    private static final PortSet CLIENT_FIRST = PortSet.parse("80-81,591,3000,5000,8000,8008,8080-8081,8888,9000,9090");
+
+    private final ServiceMatcher matcher;
+    private final int waitMs;
+    private final int timeoutMs;
+    private final int maxBytes;
+    private final int httpBytes;
+    private final PortSet tlsPorts; // Null when no certificates are fetched
+
+    BannerGrabber(ServiceMatcher matcher, int waitMs, int timeoutMs, int maxBytes, int httpBytes, PortSet tlsPorts) {
+        this.matcher = matcher;
+        this.waitMs = waitMs;
+        this.timeoutMs = timeoutMs;
+        this.maxBytes = maxBytes;
+        this.httpBytes = httpBytes;
+        this.tlsPorts = tlsPorts;
+    }
+
+    // Grabber from the scan configuration, or null when banner grabbing is off
+    static BannerGrabber create(ScanConfig config) {
+        if (!config.banners) return null;
+        return new BannerGrabber(ServiceMatcher.compile(ServiceMatcher.DEFAULT_SIGNATURES),
+            config.bannerWaitMs, config.bannerTimeoutMs, config.bannerBytes, config.httpBytes, config.tlsPorts);
+    }
+
+    // True for ports left to the TLS engine, which are closed without a banner grab
+    boolean skips(int port) {
+        return tlsPorts != null && tlsPorts.contains(port);
+    }
+
+    // How long to listen before sending the trigger; 0 sends it straight away
+    int passiveWaitMs(int port) {
+        return CLIENT_FIRST.contains(port) ? 0 : waitMs;
+    }
+
+    // Deadline for the reply once the trigger has been sent
+    int timeoutMs() {
+        return timeoutMs;
+    }
+
+    // Cap on the bytes read from one port
+    int maxBytes(int port) {
+        return CLIENT_FIRST.contains(port) ? Math.max(maxBytes, httpBytes) : maxBytes;
+    }
+
+    // Request sent when no banner arrives: a GET with a Host header on HTTP ports, asking the
+    // server to close afterwards so the read ends at the end of the reply
+    ByteBuffer trigger(InetSocketAddress target) {
+        if (!CLIENT_FIRST.contains(target.getPort())) {
+            return ByteBuffer.wrap(TRIGGER);
+        }
+        String request = "GET / HTTP/1.1\r\nHost: " + hostHeader(target)
+            + "\r\nUser-Agent: ZNet-Scanner\r\nAccept: text/html\r\nConnection: close\r\n\r\n";
+        return ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Host header value: the address and port, with an IPv6 literal in brackets and without its
+    // zone ID, which only means something on this machine (RFC 7230 section 5.4, RFC 3986 section 3.2.2)
+    static String hostHeader(InetSocketAddress target) {
+        String address = target.getAddress().getHostAddress();
+        if (target.getAddress() instanceof Inet6Address) {
+            int scope = address.indexOf('%');
+            address = "[" + (scope >= 0 ? address.substring(0, scope) : address) + "]";
+        }
+        return address + ":" + target.getPort();
+    }
+
+    // Blocking variant for a connected socket (virtual-thread probes): same wait, trigger and
+    // cap. Returns the bytes received, flipped for identify() and http().
+    ByteBuffer grab(Socket socket, InetSocketAddress target) {
+        ByteBuffer banner = ByteBuffer.allocate(maxBytes(target.getPort()));
+        try {
+            InputStream in = socket.getInputStream();
+            int waitMs = passiveWaitMs(target.getPort());
+            if (waitMs == 0 || !read(socket, in, banner, waitMs)) {
+                socket.getOutputStream().write(trigger(target).array());
+                read(socket, in, banner, timeoutMs);
+            }
+        } catch (IOException e) {
+            // Reset or closed mid-banner: classify what arrived
+        }
+        return banner.flip();
+    }
+
+    // Read until the cap, end of stream or BANNER_IDLE_MILLIS of quiet; false if nothing arrived in time
+    private boolean read(Socket socket, InputStream in, ByteBuffer banner, int firstByteTimeoutMs) throws IOException {
+        int start = banner.position();
+        socket.setSoTimeout(firstByteTimeoutMs);
+        try {
+            while (banner.hasRemaining()) {
+                int read = in.read(banner.array(), banner.position(), banner.remaining());
+                if (read < 0) break;
+                banner.position(banner.position() + read);
+                socket.setSoTimeout(IDLE_MILLIS); // The rest of the banner follows quickly
+            }
+        } catch (SocketTimeoutException e) {
+            // Quiet line: the banner is complete, or there is none
+        }
+        return banner.position() > start;
+    }
+
+    // Service label for the bytes received (flipped buffer), or null if unrecognised
+    String identify(ByteBuffer banner) {
+        ServiceMatcher.Match match = matcher.identify(banner);
+        return match != null ? match.toString() : null;
+    }
+
+    // Status, Server header and title if the bytes received are an HTTP response, else null
+    HttpResponseParser.Response http(ByteBuffer banner) {
+        return HttpResponseParser.parse(banner);
+    }
+}
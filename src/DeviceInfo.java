@@ -0,0 +1,109 @@
+// Read-only view of one device in a DeviceStore. It holds only the store and a row number,
+// so handing views to the UI or an exporter copies nothing; every getter reads the store's
+// current values.
+final class DeviceInfo {
+    private final DeviceStore store;
+    private final int row;
+
+    DeviceInfo(DeviceStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    // IPv4 address as an int in network order; for an IPv6 device the 32-bit key from Ipv6Address.key()
+    int ip() {
+        return store.ip(row);
+    }
+
+    boolean isIpv6() {
+        return store.isIpv6(row);
+    }
+
+    String ipAddress() {
+        if (store.isIpv6(row)) {
+            return Ipv6Address.format(store.ipv6High(row), store.ipv6Low(row));
+        }
+        return TargetSpec.formatAddress(store.ip(row));
+    }
+
+    // Interface the device was scanned through, e.g. "eth0 192.168.1.10/24"; null for explicit targets
+    String localInterface() {
+        return store.localInterface(row);
+    }
+
+    // Round trip of the discovery probe that found the device, in milliseconds; -1 if not measured
+    double rttMillis() {
+        int micros = store.rttMicros(row);
+        return micros < 0 ? -1 : micros / 1000.0;
+    }
+
+    // Reverse-DNS name, or the IP address while unresolved or without a PTR record
+    String hostname() {
+        String hostname = store.hostname(row);
+        return hostname != null ? hostname : ipAddress();
+    }
+
+    // 48-bit MAC, or DeviceStore.MAC_PENDING / MAC_UNKNOWN
+    long mac() {
+        return store.mac(row);
+    }
+
+    String macAddress() {
+        long mac = store.mac(row);
+        if (mac == DeviceStore.MAC_PENDING) return "Resolving...";
+        if (mac == DeviceStore.MAC_UNKNOWN) return "Unknown (Host not directly reachable)";
+        return NeighborTable.formatMac(mac);
+    }
+
+    // Manufacturer from the MAC's OUI, null if unknown
+    String vendor() {
+        return store.vendor(row);
+    }
+
+    // Open TCP ports in ascending order
+    int[] openPorts() {
+        return store.ports(row);
+    }
+
+    // Allocation-free port access for exporters
+    int portCount() {
+        return store.portCount(row);
+    }
+
+    int port(int index) {
+        return store.port(row, index);
+    }
+
+    // Service identified from the banner of the index-th open TCP port, or null
+    String portService(int index) {
+        return store.portService(row, index);
+    }
+
+    // Status, Server header and title of the index-th open TCP port if it answered HTTP, or null
+    HttpResponseParser.Response portHttp(int index) {
+        return store.portHttp(row, index);
+    }
+
+    // Certificate presented by the index-th open TCP port if it speaks TLS, or null
+    TlsHandshakeEngine.PeerCertificate portCertificate(int index) {
+        return store.portCertificate(row, index);
+    }
+
+    // UDP ports whose service answered, in ascending order
+    int[] openUdpPorts() {
+        return store.udpPorts(row);
+    }
+
+    int udpPortCount() {
+        return store.udpPortCount(row);
+    }
+
+    int udpPort(int index) {
+        return store.udpPort(row, index);
+    }
+
+    // False while enrichment stages are still running
+    boolean isComplete() {
+        return store.isComplete(row);
+    }
+}
@@ -0,0 +1,270 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Columnar store for the devices found by one scan. Each device is a row across primitive
+// arrays: the IPv4 address as an int (IPv6 as two longs), the MAC as a long, open TCP then UDP ports as a slice
+// of a shared char arena, the hostname as a slice of a UTF-8 byte arena, and the vendor, port
+// services and interface as indexes into a small string table. TLS certificates and HTTP
+// responses, found on a few ports at most, are kept as objects in side lists. A /16 with
+// every host alive fits in a few MB, and no per-device objects are kept. Readers use
+// DeviceInfo views, which only hold a row number.
+final class DeviceStore {
+    static final long MAC_PENDING = -2; // MAC stage has not run yet
+    static final long MAC_UNKNOWN = NeighborTable.UNKNOWN; // Not in the neighbor table
+
+    private int size;
+    private int[] ips = new int[64]; // IPv4 address, or Ipv6Address.key() for an IPv6 device
+    private boolean[] ipv6 = new boolean[64];
+    private long[] ipv6Highs = new long[64];
+    private long[] ipv6Lows = new long[64];
+    private long[] macs = new long[64];
+    private int[] vendorIds = new int[64]; // -1 = unknown vendor
+    private int[] rttMicros = new int[64]; // Discovery round trip, -1 = not measured
+    private int[] interfaceIds = new int[64]; // Label of the interface the device was found through, -1 = none
+    private int[] hostnameOffsets = new int[64]; // -1 = no name, shown as the IP
+    private short[] hostnameLengths = new short[64];
+    private int[] portOffsets = new int[64];
+    private char[] portCounts = new char[64]; // TCP ports; char holds 0-65535 without sign tricks
+    private char[] udpPortCounts = new char[64]; // UDP ports, stored right after the TCP ones
+    private boolean[] complete = new boolean[64];
+    private byte[] hostnames = new byte[1024];
+    private int hostnamesUsed;
+    private char[] ports = new char[256];
+    private int[] portServices = new int[256]; // String id of the service identified on each TCP port, -1 = none
+    private int[] portCertificates = new int[256]; // Index into certificates for each TCP port, -1 = none
+    private int[] portHttp = new int[256]; // Index into httpResponses for each TCP port, -1 = none
+    private int portsUsed;
+    private final List<TlsHandshakeEngine.PeerCertificate> certificates = new ArrayList<>();
+    private final List<HttpResponseParser.Response> httpResponses = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>(); // Vendors and service labels, each stored once
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    // Append a freshly discovered device, found through the labelled interface (or null), and
+    // return its row
+    synchronized int add(int ip, String via) {
+        if (size == ips.length) grow();
+        int row = size++;
+        ips[row] = ip;
+        interfaceIds[row] = via != null ? intern(via) : -1;
+        macs[row] = MAC_PENDING;
+        vendorIds[row] = -1;
+        rttMicros[row] = -1;
+        hostnameOffsets[row] = -1;
+        return row;
+    }
+
+    // Append an IPv6 device; same as add otherwise
+    synchronized int addIpv6(long high, long low, String via) {
+        int row = add(Ipv6Address.key(high, low), via);
+        ipv6[row] = true;
+        ipv6Highs[row] = high;
+        ipv6Lows[row] = low;
+        return row;
+    }
+
+    synchronized void setRtt(int row, long rttNanos) {
+        rttMicros[row] = (int) Math.min(rttNanos / 1000, Integer.MAX_VALUE);
+    }
+
+    synchronized void setHostname(int row, String hostname) {
+        if (hostname == null) {
+            hostnameOffsets[row] = -1;
+            return;
+        }
+        byte[] bytes = hostname.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE); // DNS names stay below 256 bytes anyway
+        if (hostnamesUsed + length > hostnames.length) {
+            hostnames = Arrays.copyOf(hostnames, Math.max(hostnames.length * 2, hostnamesUsed + length));
+        }
+        System.arraycopy(bytes, 0, hostnames, hostnamesUsed, length);
+        hostnameOffsets[row] = hostnamesUsed;
+        hostnameLengths[row] = (short) length;
+        hostnamesUsed += length;
+    }
+
+    synchronized void setMac(int row, long mac, String vendor) {
+        macs[row] = mac;
+        if (vendor == null) {
+            vendorIds[row] = -1;
+            return;
+        }
+        vendorIds[row] = intern(vendor);
+    }
+
+    // Store the sorted TCP ports with their services, HTTP responses and certificates (indexed
+    // like the ports, null entries for ports without one), and the sorted UDP ports; set once
+    // per device, when its probes finish
+    synchronized void setPorts(int row, PortScanEngine.OpenPorts open, TlsHandshakeEngine.PeerCertificate[] tls, int[] udp) {
+        int[] tcp = open.ports();
+        int length = tcp.length + udp.length;
+        if (portsUsed + length > ports.length) {
+            int capacity = Math.max(ports.length * 2, portsUsed + length);
+            ports = Arrays.copyOf(ports, capacity);
+            portServices = Arrays.copyOf(portServices, capacity);
+            portCertificates = Arrays.copyOf(portCertificates, capacity);
+            portHttp = Arrays.copyOf(portHttp, capacity);
+        }
+        for (int i = 0; i < tcp.length; i++) {
+            ports[portsUsed + i] = (char) tcp[i];
+            portServices[portsUsed + i] = open.services()[i] != null ? intern(open.services()[i]) : -1;
+            portCertificates[portsUsed + i] = -1;
+            if (tls[i] != null) {
+                portCertificates[portsUsed + i] = certificates.size();
+                certificates.add(tls[i]);
+            }
+            portHttp[portsUsed + i] = -1;
+            if (open.http()[i] != null) {
+                portHttp[portsUsed + i] = httpResponses.size();
+                httpResponses.add(open.http()[i]);
+            }
+        }
+        for (int i = 0; i < udp.length; i++) {
+            ports[portsUsed + tcp.length + i] = (char) udp[i];
+            portServices[portsUsed + tcp.length + i] = -1;
+            portCertificates[portsUsed + tcp.length + i] = -1;
+            portHttp[portsUsed + tcp.length + i] = -1;
+        }
+        portOffsets[row] = portsUsed;
+        portCounts[row] = (char) tcp.length; // A port list never exceeds 65535 entries
+        udpPortCounts[row] = (char) udp.length;
+        portsUsed += length;
+    }
+
+    synchronized void markComplete(int row) {
+        complete[row] = true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // Flyweight over one row; holds no device data itself
+    DeviceInfo view(int row) {
+        return new DeviceInfo(this, row);
+    }
+
+    // Row accessors used by DeviceInfo
+
+    synchronized int ip(int row) {
+        return ips[row];
+    }
+
+    synchronized boolean isIpv6(int row) {
+        return ipv6[row];
+    }
+
+    synchronized long ipv6High(int row) {
+        return ipv6Highs[row];
+    }
+
+    synchronized long ipv6Low(int row) {
+        return ipv6Lows[row];
+    }
+
+    synchronized int rttMicros(int row) {
+        return rttMicros[row];
+    }
+
+    synchronized long mac(int row) {
+        return macs[row];
+    }
+
+    synchronized String vendor(int row) {
+        return vendorIds[row] < 0 ? null : strings.get(vendorIds[row]);
+    }
+
+    synchronized String localInterface(int row) {
+        return interfaceIds[row] < 0 ? null : strings.get(interfaceIds[row]);
+    }
+
+    synchronized String hostname(int row) {
+        int offset = hostnameOffsets[row];
+        return offset < 0 ? null : new String(hostnames, offset, hostnameLengths[row], StandardCharsets.UTF_8);
+    }
+
+    synchronized int portCount(int row) {
+        return portCounts[row];
+    }
+
+    synchronized int port(int row, int index) {
+        return ports[portOffsets[row] + index];
+    }
+
+    // Service identified on a TCP port, or null
+    synchronized String portService(int row, int index) {
+        int id = portServices[portOffsets[row] + index];
+        return id < 0 ? null : strings.get(id);
+    }
+
+    // HTTP response read from a TCP port, or null
+    synchronized HttpResponseParser.Response portHttp(int row, int index) {
+        int id = portHttp[portOffsets[row] + index];
+        return id < 0 ? null : httpResponses.get(id);
+    }
+
+    // Certificate presented on a TCP port, or null
+    synchronized TlsHandshakeEngine.PeerCertificate portCertificate(int row, int index) {
+        int id = portCertificates[portOffsets[row] + index];
+        return id < 0 ? null : certificates.get(id);
+    }
+
+    synchronized int udpPortCount(int row) {
+        return udpPortCounts[row];
+    }
+
+    synchronized int udpPort(int row, int index) {
+        return ports[portOffsets[row] + portCounts[row] + index];
+    }
+
+    synchronized int[] ports(int row) {
+        return copyPorts(portOffsets[row], portCounts[row]);
+    }
+
+    synchronized int[] udpPorts(int row) {
+        return copyPorts(portOffsets[row] + portCounts[row], udpPortCounts[row]);
+    }
+
+    synchronized boolean isComplete(int row) {
+        return complete[row];
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private int[] copyPorts(int offset, int count) {
+        int[] copy = new int[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = ports[offset + i];
+        }
+        return copy;
+    }
+
+    private void grow() {
+        int capacity = ips.length * 2;
+        ips = Arrays.copyOf(ips, capacity);
+        ipv6 = Arrays.copyOf(ipv6, capacity);
+        ipv6Highs = Arrays.copyOf(ipv6Highs, capacity);
+        ipv6Lows = Arrays.copyOf(ipv6Lows, capacity);
+        macs = Arrays.copyOf(macs, capacity);
+        rttMicros = Arrays.copyOf(rttMicros, capacity);
+        vendorIds = Arrays.copyOf(vendorIds, capacity);
+        interfaceIds = Arrays.copyOf(interfaceIds, capacity);
+        hostnameOffsets = Arrays.copyOf(hostnameOffsets, capacity);
+        hostnameLengths = Arrays.copyOf(hostnameLengths, capacity);
+        portOffsets = Arrays.copyOf(portOffsets, capacity);
+        portCounts = Arrays.copyOf(portCounts, capacity);
+        udpPortCounts = Arrays.copyOf(udpPortCounts, capacity);
+        complete = Arrays.copyOf(complete, capacity);
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Built-in PTR resolver speaking DNS over UDP to one nameserver. A single non-blocking
+// DatagramChannel keeps hundreds of queries in flight; responses are matched by random
+// transaction ID and question, and unanswered queries are retried from a timer wheel.
+final class DnsPtrResolver implements ReverseResolver {
+    private static final int DNS_PORT = 53;
+    private static final int TYPE_PTR = 12;
+    private static final int CLASS_IN = 1;
+    private static final int RCODE_NXDOMAIN = 3;
+    private static final int MAX_MESSAGE = 512; // Classic UDP DNS limit; PTR answers fit easily
+    static final int MAX_IN_FLIGHT = 16_384; // A quarter of the 16-bit ID space, so a free random ID takes a few draws at most
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final int timeoutMs;
+    private final int retries;
+    private final int maxInFlight;
+    private final Queue<Query> submitted = new ConcurrentLinkedQueue<>();
+    private final Thread loop;
+
+    // Loop-thread state
+    private final Query[] byId = new Query[65536];
+    private final Queue<Query> backlog = new ArrayDeque<>(); // Waiting for an in-flight slot
+    private final TimerWheel<Query> wheel = new TimerWheel<>(10, 512);
+    private final SecureRandom random = new SecureRandom(); // Unpredictable IDs resist spoofed answers
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(MAX_MESSAGE);
+    private int inFlight;
+    private volatile boolean running = true;
+
+    // One outstanding PTR query
+    private static final class Query {
+        final int address;
+        final String name;
+        final CompletableFuture<Answer> result = new CompletableFuture<>();
+        int id;
+        int attempts;
+        TimerWheel.Timeout<Query> timeout;
+
+        Query(int address) {
+            this.address = address;
+            this.name = reverseName(address);
+        }
+    }
+
+    // nameserver is "host" or "host:port"
+    DnsPtrResolver(String nameserver, int timeoutMs, int retries, int maxInFlight) throws IOException {
+        this.timeoutMs = timeoutMs;
+        this.retries = retries;
+        this.maxInFlight = Math.min(maxInFlight, MAX_IN_FLIGHT); // More would leave send() looking for a free ID forever
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(parseServer(nameserver)); // Only accept datagrams from the nameserver
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        loop = Thread.ofPlatform().name("dns-ptr-resolver").daemon().start(this::run);
+    }
+
+    // First "nameserver" line of /etc/resolv.conf, or null if there is none
+    static String systemNameserver() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/etc/resolv.conf"))) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length >= 2 && fields[0].equals("nameserver") && !fields[1].contains(":")) {
+                    return fields[1]; // IPv4 nameserver
+                }
+            }
+        } catch (IOException e) {
+            // No resolv.conf (e.g. Windows); callers fall back to the system resolver
+        }
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<Answer> resolve(int address) {
+        Query query = new Query(address);
+        if (!running) {
+            query.result.completeExceptionally(new IOException("Resolver closed"));
+            return query.result;
+        }
+        submitted.add(query);
+        selector.wakeup();
+        return query.result;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(wheel.millisUntilNextTick(System.nanoTime()));
+                selector.selectedKeys().clear();
+                receiveAll();
+                wheel.advance(System.nanoTime(), this::expired);
+                Query query;
+                while ((query = submitted.poll()) != null) {
+                    backlog.add(query);
+                }
+                // Fill freed slots last, so the wheel is never empty while queries are waiting
+                while (inFlight < maxInFlight && !backlog.isEmpty()) {
+                    send(backlog.poll());
+                }
+            }
+        } catch (IOException e) {
+            // Channel failure: fail everything still waiting below
+        } finally {
+            failAll();
+        }
+    }
+
+    // Assign a free random transaction ID and send the query
+    private void send(Query query) {
+        int id;
+        do {
+            id = random.nextInt(65536);
+        } while (byId[id] != null);
+        query.id = id;
+        byId[id] = query;
+        inFlight++;
+        transmit(query);
+    }
+
+    private void transmit(Query query) {
+        query.attempts++;
+        try {
+            channel.write(encodeQuery(query.id, query.name));
+        } catch (IOException e) {
+            // Nameserver unreachable right now (e.g. ICMP port unreachable); the timer retries
+        }
+        query.timeout = wheel.schedule(query, System.nanoTime() + timeoutMs * 1_000_000L);
+    }
+
+    private void expired(Query query) {
+        if (query.attempts <= retries) {
+            transmit(query); // Same ID, so a late answer to the first attempt still counts
+            return;
+        }
+        complete(query, Answer.negative(-1)); // Timed out: remembered as a negative answer
+    }
+
+    private void receiveAll() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            int read;
+            try {
+                read = channel.read(receiveBuffer);
+            } catch (java.net.PortUnreachableException e) {
+                continue; // ICMP error for an earlier datagram; queries retry on their own
+            }
+            if (read <= 0) return;
+            receiveBuffer.flip();
+            handleResponse(receiveBuffer);
+        }
+    }
+
+    private void handleResponse(ByteBuffer message) {
+        if (message.remaining() < 12) return;
+        int id = message.getShort(0) & 0xFFFF;
+        int flags = message.getShort(2) & 0xFFFF;
+        Query query = byId[id];
+        if (query == null || (flags & 0x8000) == 0) return; // Unknown ID or not a response
+        try {
+            int questions = message.getShort(4) & 0xFFFF;
+            int answers = message.getShort(6) & 0xFFFF;
+            int position = 12;
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < questions; i++) {
+                name.setLength(0);
+                position = readName(message, position, name) + 4; // Skip QTYPE and QCLASS
+                if (!name.toString().equalsIgnoreCase(query.name)) return; // Mismatched question: ignore
+            }
+            int rcode = flags & 0x000F;
+            if (rcode == RCODE_NXDOMAIN) {
+                complete(query, Answer.negative(-1));
+                return;
+            }
+            for (int i = 0; i < answers; i++) {
+                position = readName(message, position, name);
+                int type = message.getShort(position) & 0xFFFF;
+                long ttl = message.getInt(position + 4) & 0xFFFFFFFFL;
+                int length = message.getShort(position + 8) & 0xFFFF;
+                position += 10;
+                if (type == TYPE_PTR) {
+                    name.setLength(0);
+                    readName(message, position, name);
+                    complete(query, new Answer(name.toString(), ttl));
+                    return;
+                }
+                position += length; // CNAME chains etc. are skipped
+            }
+            complete(query, Answer.negative(-1)); // NOERROR without a PTR record
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated or malformed message: wait for a retry or a better answer
+        }
+    }
+
+    private void complete(Query query, Answer answer) {
+        wheel.cancel(query.timeout);
+        byId[query.id] = null;
+        inFlight--;
+        query.result.complete(answer);
+    }
+
+    private void failAll() {
+        IOException closed = new IOException("Resolver closed");
+        for (int id = 0; id < byId.length; id++) {
+            if (byId[id] != null) byId[id].result.completeExceptionally(closed);
+        }
+        for (Query query : backlog) query.result.completeExceptionally(closed);
+        Query query;
+        while ((query = submitted.poll()) != null) query.result.completeExceptionally(closed);
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    // Encode a recursive PTR query for the given name
+    static ByteBuffer encodeQuery(int id, String name) {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE);
+        buffer.putShort((short) id).putShort((short) 0x0100) // Standard query, recursion desired
+            .putShort((short) 1).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        for (String label : name.split("\\.")) {
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+            buffer.put((byte) bytes.length).put(bytes);
+        }
+        buffer.put((byte) 0).putShort((short) TYPE_PTR).putShort((short) CLASS_IN);
+        return buffer.flip();
+    }
+
+    // Read a possibly compressed domain name; returns the position after the name in the record
+    static int readName(ByteBuffer message, int position, StringBuilder name) {
+        int end = -1;
+        int jumps = 0;
+        while (true) {
+            int length = message.get(position) & 0xFF;
+            if ((length & 0xC0) == 0xC0) { // Compression pointer
+                if (++jumps > 16) throw new IndexOutOfBoundsException("Compression loop");
+                if (end < 0) end = position + 2;
+                position = ((length & 0x3F) << 8) | (message.get(position + 1) & 0xFF);
+                continue;
+            }
+            if (length == 0) {
+                return end < 0 ? position + 1 : end;
+            }
+            if (name.length() > 0) name.append('.');
+            for (int i = 1; i <= length; i++) {
+                name.append((char) (message.get(position + i) & 0xFF));
+            }
+            position += length + 1;
+        }
+    }
+
+    // "d.c.b.a.in-addr.arpa" for a.b.c.d
+    static String reverseName(int address) {
+        return (address & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "."
+            + ((address >>> 24) & 0xFF) + ".in-addr.arpa";
+    }
+
+    private static InetSocketAddress parseServer(String nameserver) {
+        int colon = nameserver.lastIndexOf(':');
+        if (colon > 0 && nameserver.indexOf(':') == colon) { // host:port (IPv4 or hostname)
+            return new InetSocketAddress(nameserver.substring(0, colon), Integer.parseInt(nameserver.substring(colon + 1)));
+        }
+        return new InetSocketAddress(nameserver, DNS_PORT);
+    }
+}
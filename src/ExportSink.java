@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Instant;
+
+// Streams every completed device as one NDJSON object or CSV row. Each record is written
+// and flushed as soon as the host finishes, and nothing is retained, so memory use does
+// not grow with the number of hosts scanned. When monitoring, every record starts with the
+// time and the event ("up", "changed" or "down") that produced it.
+final class ExportSink implements ResultSink, AutoCloseable {
+    // Supported output formats
+    enum Format { NDJSON, CSV }
+
+    private final Writer out;
+    private final Format format;
+    private final boolean events; // Lead each record with time and event
+    private final StringBuilder line = new StringBuilder(); // Reused per record, guarded by this
+
+    ExportSink(Writer out, Format format, boolean events) throws IOException {
+        this.out = out;
+        this.format = format;
+        this.events = events;
+        if (format == Format.CSV) {
+            out.write((events ? "time,event," : "") + "ip,interface,hostname,mac,vendor,rtt_ms,open_ports,open_udp_ports,services,http,certificates\n");
+            out.flush();
+        }
+    }
+
+    @Override
+    public void hostCompleted(DeviceInfo device) {
+        write(device, "up");
+    }
+
+    @Override
+    public void hostChanged(DeviceInfo device, DeviceInfo previous) {
+        write(device, "changed");
+    }
+
+    @Override
+    public void hostLost(DeviceInfo device) {
+        write(device, "down");
+    }
+
+    private synchronized void write(DeviceInfo device, String event) {
+        line.setLength(0);
+        if (format == Format.NDJSON) {
+            line.append('{');
+            if (events) {
+                line.append("\"time\":\"").append(Instant.now()).append("\",\"event\":\"").append(event).append("\",");
+            }
+            appendJson(device);
+        } else {
+            if (events) {
+                line.append(Instant.now()).append(',').append(event).append(',');
+            }
+            appendCsv(device);
+        }
+        line.append('\n');
+        try {
+            out.append(line);
+            out.flush(); // Make each host visible to readers of the stream immediately
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.flush();
+        out.close();
+    }
+
+    private void appendJson(DeviceInfo device) {
+        line.append("\"ip\":");
+        appendJsonString(device.ipAddress());
+        line.append(",\"interface\":");
+        appendJsonString(device.localInterface());
+        line.append(",\"hostname\":");
+        appendJsonString(device.hostname());
+        line.append(",\"mac\":");
+        appendJsonString(device.macAddress());
+        line.append(",\"vendor\":");
+        appendJsonString(device.vendor());
+        line.append(",\"rttMs\":");
+        double rtt = device.rttMillis();
+        if (rtt < 0) {
+            line.append("null");
+        } else {
+            line.append(rtt);
+        }
+        line.append(",\"openPorts\":[");
+        appendPorts(device, false, ',');
+        line.append("],\"openUdpPorts\":[");
+        appendPorts(device, true, ',');
+        line.append("],\"services\":{"); // Port -> service identified from its banner
+        int count = device.portCount();
+        boolean first = true;
+        for (int i = 0; i < count; i++) {
+            String service = device.portService(i);
+            if (service == null) continue;
+            if (!first) line.append(',');
+            first = false;
+            line.append('"').append(device.port(i)).append("\":");
+            appendJsonString(service);
+        }
+        line.append("},\"http\":{"); // Port -> status, Server header and title of its HTTP reply
+        first = true;
+        for (int i = 0; i < count; i++) {
+            HttpResponseParser.Response http = device.portHttp(i);
+            if (http == null) continue;
+            if (!first) line.append(',');
+            first = false;
+            line.append('"').append(device.port(i)).append("\":{\"status\":").append(http.status()).append(",\"server\":");
+            appendJsonString(http.server());
+            line.append(",\"title\":");
+            appendJsonString(http.title());
+            line.append('}');
+        }
+        line.append("},\"certificates\":{"); // Port -> certificate presented by its TLS server
+        first = true;
+        for (int i = 0; i < count; i++) {
+            TlsHandshakeEngine.PeerCertificate certificate = device.portCertificate(i);
+            if (certificate == null) continue;
+            if (!first) line.append(',');
+            first = false;
+            line.append('"').append(device.port(i)).append("\":{\"subject\":");
+            appendJsonString(certificate.subject());
+            line.append(",\"subjectAltNames\":[");
+            for (int n = 0; n < certificate.subjectAltNames().size(); n++) {
+                if (n > 0) line.append(',');
+                appendJsonString(certificate.subjectAltNames().get(n));
+            }
+            line.append("],\"issuer\":");
+            appendJsonString(certificate.issuer());
+            line.append(",\"notAfter\":");
+            appendJsonString(certificate.notAfter());
+            line.append('}');
+        }
+        line.append("}}");
+    }
+
+    private void appendCsv(DeviceInfo device) {
+        appendCsvField(device.ipAddress());
+        line.append(',');
+        appendCsvField(device.localInterface());
+        line.append(',');
+        appendCsvField(device.hostname());
+        line.append(',');
+        appendCsvField(device.macAddress());
+        line.append(',');
+        appendCsvField(device.vendor());
+        line.append(',');
+        if (device.rttMillis() >= 0) {
+            line.append(device.rttMillis());
+        }
+        line.append(',');
+        appendPorts(device, false, ';'); // Digits and separators never need quoting
+        line.append(',');
+        appendPorts(device, true, ';');
+        line.append(',');
+        StringBuilder services = new StringBuilder(); // "22=SSH (OpenSSH 9.6p1);80=HTTP"
+        int count = device.portCount();
+        for (int i = 0; i < count; i++) {
+            String service = device.portService(i);
+            if (service == null) continue;
+            if (services.length() > 0) services.append(';');
+            services.append(device.port(i)).append('=').append(service);
+        }
+        appendCsvField(services.length() > 0 ? services.toString() : null);
+        line.append(',');
+        StringBuilder http = new StringBuilder(); // "80=200 Welcome to nginx!;8080=404"
+        for (int i = 0; i < count; i++) {
+            HttpResponseParser.Response response = device.portHttp(i);
+            if (response == null) continue;
+            if (http.length() > 0) http.append(';');
+            http.append(device.port(i)).append('=').append(response.status());
+            if (response.title() != null) http.append(' ').append(response.title());
+        }
+        appendCsvField(http.length() > 0 ? http.toString() : null);
+        line.append(',');
+        StringBuilder certificates = new StringBuilder(); // "443=example.com until 2027-01-31T12:00:00Z"
+        for (int i = 0; i < count; i++) {
+            TlsHandshakeEngine.PeerCertificate certificate = device.portCertificate(i);
+            if (certificate == null) continue;
+            if (certificates.length() > 0) certificates.append(';');
+            certificates.append(device.port(i)).append('=').append(certificate.commonName())
+                .append(" until ").append(certificate.notAfter());
+        }
+        appendCsvField(certificates.length() > 0 ? certificates.toString() : null);
+    }
+
+    private void appendPorts(DeviceInfo device, boolean udp, char separator) {
+        int count = udp ? device.udpPortCount() : device.portCount();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) line.append(separator);
+            line.append(udp ? device.udpPort(i) : device.port(i));
+        }
+    }
+
+    private void appendJsonString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    // RFC 4180: quote fields containing separators, quotes or line breaks
+    private void appendCsvField(String value) {
+        if (value == null) return;
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+            || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+// Command-line entry point: runs the same scan engine as the GUI without a window and
+// streams results to stdout or a file. Log messages go to stderr so output stays clean.
+final class HeadlessScanner {
+    private static final String USAGE = String.join("\n",
+        "Usage: java NetworkScanner [options]",
+        "  --targets <spec>        CIDR blocks, ranges and addresses (default: the network of every interface)",
+        "  --interfaces <names>    interfaces whose networks are scanned when no targets are given (default: all up)",
+        "  --exclude <spec>        addresses, ranges or CIDR blocks to skip",
+        "  --ports <spec>          ports, ranges, topN or a profile (default, web, db, windows, iot)",
+        "  --udp-ports <spec|none> UDP services to probe (default 53,123,161,1900,5353)",
+        "  --tls-ports <spec|none> open ports whose TLS certificate is fetched (default 443,465,636,993,995,8443)",
+        "  --no-ipv6               skip IPv6 discovery on the scanned interfaces",
+        "  --format ndjson|csv     output format (default: ndjson)",
+        "  --output <file>         write results to a file instead of stdout",
+        "  --rate <n>              connection attempts per second, 0 = unlimited",
+        "  --max-in-flight <n>     outstanding probes across the scan",
+        "  --timeout <ms>          reachability timeout and initial connect deadline",
+        "  --discovery tcp|icmp|reachable  TCP ping on --ping-ports, ICMP echo, or InetAddress.isReachable (default: tcp)",
+        "  --ping-ports <spec>     ports a TCP ping connects to (default 22,80,139,443,445,3389,62078)",
+        "  --executor platform|virtual",
+        "  --nameserver <host[:port]>  send PTR queries to this server instead of the resolv.conf one",
+        "  --monitor               keep running: recheck live hosts and sweep the rest, writing only changes",
+        "  --history <ip>          print every recorded state of a host from the scan history instead of scanning",
+        "  --first-seen <ip:port>  print when a port was first recorded open on a host instead of scanning",
+        "  --history-range <from>/<to>  print the recorded states between two ISO-8601 instants (of --history's host if given)",
+        "  --no-history            do not record results in the scan history",
+        "  --quiet                 do not log progress to stderr",
+        "  --headless              run without a window even if a display is available",
+        "  --help");
+
+    private HeadlessScanner() {
+    }
+
+    // Run a scan from command-line arguments; returns the process exit code
+    static int run(String[] args) {
+        PrintStream err = System.err;
+        ScanConfig config;
+        ExportSink.Format format = ExportSink.Format.NDJSON;
+        String output = null;
+        boolean quiet = false;
+        boolean monitor = false;
+        String historyOf = null;
+        String firstSeen = null;
+        long[] historyRange = null; // From inclusive, to exclusive, in epoch milliseconds
+        try {
+            config = ScanConfig.fromSystemProperties();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = null;
+                int equals = arg.indexOf('=');
+                if (arg.startsWith("--") && equals > 0) { // Accept both --key value and --key=value
+                    value = arg.substring(equals + 1);
+                    arg = arg.substring(0, equals);
+                }
+                switch (arg) {
+                    case "--help", "-h" -> {
+                        err.println(USAGE);
+                        return 0;
+                    }
+                    case "--headless" -> { }
+                    case "--quiet" -> quiet = true;
+                    case "--monitor" -> monitor = true;
+                    case "--history" -> historyOf = value != null ? value : next(args, ++i, arg);
+                    case "--first-seen" -> firstSeen = value != null ? value : next(args, ++i, arg);
+                    case "--history-range" -> historyRange = parseRange(value != null ? value : next(args, ++i, arg));
+                    case "--no-history" -> config.historyDir = null;
+                    case "--targets" -> config.targets = value != null ? value : next(args, ++i, arg);
+                    case "--interfaces" -> config.interfaces = value != null ? value : next(args, ++i, arg);
+                    case "--exclude" -> config.exclude = value != null ? value : next(args, ++i, arg);
+                    case "--ports" -> config.ports = PortSet.parse(value != null ? value : next(args, ++i, arg));
+                    case "--udp-ports" -> config.udpPorts = ScanConfig.parseOptionalPorts(value != null ? value : next(args, ++i, arg));
+                    case "--tls-ports" -> config.tlsPorts = ScanConfig.parseOptionalPorts(value != null ? value : next(args, ++i, arg));
+                    case "--no-ipv6" -> config.ipv6 = false;
+                    case "--format" -> format = ExportSink.Format.valueOf((value != null ? value : next(args, ++i, arg)).toUpperCase());
+                    case "--output" -> output = value != null ? value : next(args, ++i, arg);
+                    case "--rate" -> config.ratePerSecond = rate(arg, value != null ? value : next(args, ++i, arg));
+                    case "--max-in-flight" -> config.maxInFlight = positive(arg, value != null ? value : next(args, ++i, arg));
+                    case "--timeout" -> config.timeoutMs = positive(arg, value != null ? value : next(args, ++i, arg));
+                    case "--discovery" -> config.discovery = HostScanPipeline.Discovery.valueOf((value != null ? value : next(args, ++i, arg)).toUpperCase());
+                    case "--ping-ports" -> config.pingPorts = PortSet.parse(value != null ? value : next(args, ++i, arg));
+                    case "--nameserver" -> config.nameserver = value != null ? value : next(args, ++i, arg);
+                    case "--executor" -> config.executionMode = ScanExecutor.Mode.valueOf((value != null ? value : next(args, ++i, arg)).toUpperCase());
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            config.minTimeoutMs = Math.min(config.minTimeoutMs, config.timeoutMs); // --timeout may undercut znet.minTimeout
+        } catch (IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        if (historyOf != null || firstSeen != null || historyRange != null) {
+            return queryHistory(config, historyOf, firstSeen, historyRange);
+        }
+        boolean verbose = !quiet;
+        try (ScanContext context = ScanContext.create(config);
+             Writer writer = output == null
+                 ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                 : Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8);
+             ExportSink exporter = new ExportSink(writer, format, monitor)) {
+            List<ScanSession.Scope> scopes = config.resolveScopes(message -> log(verbose, message));
+            long total = ScanSession.size(scopes);
+            log(verbose, "Scanning " + total + " hosts: " + scopes);
+            if (total == 0) return 0;
+            if (monitor) {
+                new ScanMonitor(context).run(scopes, new ResultSink() { // Runs until the process is stopped
+                    @Override
+                    public void hostCompleted(DeviceInfo device) {
+                        exporter.hostCompleted(device);
+                    }
+
+                    @Override
+                    public void hostChanged(DeviceInfo device, DeviceInfo previous) {
+                        exporter.hostChanged(device, previous);
+                    }
+
+                    @Override
+                    public void hostLost(DeviceInfo device) {
+                        exporter.hostLost(device);
+                    }
+
+                    @Override
+                    public void log(String message) {
+                        HeadlessScanner.log(verbose, message);
+                    }
+                });
+                return 0;
+            }
+            new ScanSession(context).run(scopes, new ResultSink() {
+                private int lastPercent = -1;
+
+                @Override
+                public void hostCompleted(DeviceInfo device) {
+                    exporter.hostCompleted(device);
+                }
+
+                @Override
+                public synchronized void progress(long done, long total) {
+                    int percent = (int) (done * 100 / total);
+                    if (percent != lastPercent) { // One line per percent, not per host
+                        lastPercent = percent;
+                        HeadlessScanner.log(verbose, "Progress: " + percent + "% (" + done + "/" + total + ")");
+                    }
+                }
+
+                @Override
+                public void log(String message) {
+                    HeadlessScanner.log(verbose, message);
+                }
+            });
+            log(verbose, "Reverse DNS: " + context.reverseDns.stats());
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            err.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 130;
+        }
+    }
+
+    // Answer a history query from the stored scans without scanning
+    private static int queryHistory(ScanConfig config, String historyOf, String firstSeen, long[] range) {
+        PrintStream out = System.out;
+        if (config.historyDir == null) {
+            System.err.println("Error: scan history is disabled");
+            return 2;
+        }
+        try (ScanHistory history = ScanHistory.openReadOnly(Path.of(config.historyDir))) {
+            if (historyOf != null || range != null) {
+                List<ScanHistory.Snapshot> snapshots = historyOf != null ? history.history(historyOf) : history.between(range[0], range[1]);
+                for (ScanHistory.Snapshot snapshot : snapshots) {
+                    if (range != null && (snapshot.timeMillis() < range[0] || snapshot.timeMillis() >= range[1])) continue;
+                    out.println(Instant.ofEpochMilli(snapshot.timeMillis()) + " " + snapshot.eventName() + " " + snapshot.ip()
+                        + " tcp=" + join(snapshot.ports()) + " udp=" + join(snapshot.udpPorts())
+                        + (snapshot.hostname() != null ? " hostname=" + snapshot.hostname() : "")
+                        + (snapshot.mac() != NeighborTable.UNKNOWN ? " mac=" + NeighborTable.formatMac(snapshot.mac()) : ""));
+                }
+            }
+            if (firstSeen != null) {
+                int colon = firstSeen.lastIndexOf(':'); // IPv6 addresses contain colons too
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Expected <ip>:<port> for --first-seen: " + firstSeen);
+                }
+                String ip = firstSeen.substring(0, colon);
+                int port = Integer.parseInt(firstSeen.substring(colon + 1));
+                long time = history.firstSeen(ip, port);
+                out.println(ip + " port " + port + ": " + (time < 0 ? "never seen open" : "first seen open " + Instant.ofEpochMilli(time)));
+            }
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // "<from>/<to>" as two ISO-8601 instants, e.g. 2026-10-01T00:00:00Z/2026-10-08T00:00:00Z
+    private static long[] parseRange(String text) {
+        int slash = text.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Expected <from>/<to> as ISO-8601 instants for --history-range: " + text);
+        }
+        try {
+            long from = Instant.parse(text.substring(0, slash).trim()).toEpochMilli();
+            long to = Instant.parse(text.substring(slash + 1).trim()).toEpochMilli();
+            return new long[] {from, to};
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected <from>/<to> as ISO-8601 instants for --history-range: " + text);
+        }
+    }
+
+    private static String join(int[] ports) {
+        StringBuilder sb = new StringBuilder();
+        for (int port : ports) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(port);
+        }
+        return sb.length() == 0 ? "none" : sb.toString();
+    }
+
+    // Same contract as the znet.* properties in ScanConfig
+    private static int positive(String option, String text) {
+        int value = Integer.parseInt(text.trim());
+        if (value < 1) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return value;
+    }
+
+    // 0 is the documented "unlimited", so only negative and non-finite rates are rejected
+    private static double rate(String option, String text) {
+        double value = Double.parseDouble(text.trim());
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(option + " must be zero or positive");
+        }
+        return value;
+    }
+
+    private static String next(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void log(boolean verbose, String message) {
+        if (verbose) System.err.println(message);
+    }
+}
@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Staged host scan: discovery feeds bounded queues for port probing, reverse DNS and MAC
+// lookup. Every stage has its own executor and parallelism, so a slow PTR lookup only
+// occupies DNS workers while ports keep being probed.
+final class HostScanPipeline implements AutoCloseable {
+    private static final int ENRICHMENT_STAGES = 3; // Ports, DNS and MAC
+
+    // How the discovery stage decides a host is up: TCP connects to a few common ports on the
+    // shared selector loops, where a refusal counts as an answer; ICMP echo through the
+    // IcmpEchoEngine; or InetAddress.isReachable, which without root is a blocking connect to
+    // the echo port
+    enum Discovery { TCP, ICMP, REACHABLE }
+
+    private final ScanConfig config;
+    private final PortScanEngine portScanEngine;
+    private final UdpProbeEngine udpProbeEngine;
+    private final BannerGrabber bannerGrabber; // Null when banner grabbing is off
+    private final TlsHandshakeEngine tlsEngine;
+    private final IcmpEchoEngine icmpEngine; // Null unless ICMP discovery is configured and available
+    private final Discovery discovery;
+    private final ReverseDnsCache reverseDns;
+    private final NeighborTable neighbors;
+    private final OuiIndex ouiIndex;
+    private final DeviceStore store; // Receives every live host as a row, unless submitted with a store of its own
+    private final LocalInterface via; // Interface every probe is bound to, or null for any
+    private final InetAddress source; // Its address, or null
+    private final ResultSink listener; // Told about discovered hosts and errors
+    private final int[] ports; // Expanded once from config.ports and shared by every host
+    private final int[] udpPorts; // Likewise from config.udpPorts
+    private final int[] pingPorts; // Likewise from config.pingPorts
+    private final PortSet tlsPorts; // Open ports that get a TLS handshake; null = none
+    private final Semaphore admitted; // Hosts inside the pipeline; sizes every queue below
+    private final Set<HostJob> activeJobs = ConcurrentHashMap.newKeySet();
+    private final Stage discoveryStage, portStage, dnsStage, macStage;
+
+    HostScanPipeline(ScanContext context, DeviceStore store, ResultSink listener, LocalInterface via) {
+        this.config = context.config;
+        this.portScanEngine = context.portScanEngine;
+        this.udpProbeEngine = context.udpProbeEngine;
+        this.bannerGrabber = context.portScanEngine.bannerGrabber();
+        this.tlsEngine = context.tlsEngine;
+        this.icmpEngine = context.icmpEngine;
+        this.discovery = config.discovery == Discovery.ICMP && icmpEngine == null ? Discovery.TCP : config.discovery;
+        this.reverseDns = context.reverseDns;
+        this.neighbors = context.neighbors;
+        this.ouiIndex = context.ouiIndex;
+        this.store = store;
+        this.via = via;
+        this.source = via != null ? via.address() : null;
+        this.listener = listener;
+        this.ports = config.ports.toArray();
+        this.udpPorts = config.udpPorts != null ? config.udpPorts.toArray() : new int[0];
+        this.pingPorts = config.pingPorts.toArray();
+        this.tlsPorts = config.tlsPorts;
+        this.admitted = new Semaphore(config.hostWindow);
+        // Downstream queues hold every admitted host, so discovery never blocks on a slow stage
+        discoveryStage = new Stage("discovery", config.maxConcurrency, this::discover);
+        portStage = new Stage("ports", config.portParallelism, this::probePorts);
+        dnsStage = new Stage("dns", config.dnsParallelism, this::resolveHostname);
+        macStage = new Stage("mac", config.macParallelism, this::resolveMacAddress);
+    }
+
+    // Admit an int-encoded IPv4 host; blocks while hostWindow hosts are in flight. The future
+    // completes with a view of the fully enriched device, or null if the host did not answer.
+    CompletableFuture<DeviceInfo> submit(int address) throws InterruptedException {
+        return submit(address, store);
+    }
+
+    // Same, with the host's row going into the given store
+    CompletableFuture<DeviceInfo> submit(int address, DeviceStore into) throws InterruptedException {
+        admitted.acquire();
+        HostJob job = new HostJob(address, into);
+        activeJobs.add(job);
+        job.result.whenComplete((device, error) -> {
+            activeJobs.remove(job);
+            admitted.release();
+        });
+        discoveryStage.put(job);
+        return job.result;
+    }
+
+    // Admit an IPv6 host found by Ipv6Discovery on the link of scope; the discovery stage
+    // takes it as alive, and its MAC and name come from discovery instead of lookups
+    CompletableFuture<DeviceInfo> submit(Ipv6HostSet hosts, int index, NetworkInterface scope) throws InterruptedException {
+        admitted.acquire();
+        HostJob job = new HostJob(hosts, index, scope);
+        activeJobs.add(job);
+        job.result.whenComplete((device, error) -> {
+            activeJobs.remove(job);
+            admitted.release();
+        });
+        discoveryStage.put(job);
+        return job.result;
+    }
+
+    // Cancel every stage and every host still in flight
+    void cancel() {
+        for (Stage stage : new Stage[] {discoveryStage, portStage, dnsStage, macStage}) {
+            stage.cancel();
+        }
+        for (HostJob job : activeJobs) {
+            job.result.cancel(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Stage stage : new Stage[] {discoveryStage, portStage, dnsStage, macStage}) {
+            stage.close();
+        }
+    }
+
+    // Stage 1: reachability check; live hosts are announced and fanned out to enrichment
+    private void discover(HostJob job) {
+        if (job.ipv6) {
+            job.row = job.store.addIpv6(job.high, job.low, via != null ? via.label() : null); // Already seen answering on the link
+            listener.hostDiscovered(job.store.view(job.row));
+            fanOut(job);
+            return;
+        }
+        if (discovery != Discovery.REACHABLE) {
+            pingHost(job);
+            return;
+        }
+        ScanThrottle throttle = portScanEngine.throttle();
+        long rttNanos;
+        try {
+            throttle.acquire();
+            long start = System.nanoTime();
+            boolean reachable;
+            try {
+                reachable = via != null
+                    ? job.address.isReachable(via.networkInterface(), 0, config.timeoutMs) // Sent from this interface
+                    : job.address.isReachable(config.timeoutMs); // Check if host is reachable
+            } finally {
+                throttle.release();
+            }
+            if (!reachable) {
+                job.result.complete(null);
+                return;
+            }
+            rttNanos = System.nanoTime() - start;
+            portScanEngine.rttEstimator().sample(job.address, rttNanos); // Seeds the port deadlines
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Scan cancelled while waiting for the throttle
+            job.result.cancel(false);
+            return;
+        } catch (IOException e) {
+            listener.log("Error scanning " + job.host + ": " + e.getMessage()); // Log scanning error
+            job.result.complete(null);
+            return;
+        }
+        alive(job, rttNanos);
+    }
+
+    // TCP ping on the port engine's selector loops, or an ICMP echo; the worker is released
+    // once the probes are queued, and the first answer admits the host from the engine's thread
+    private void pingHost(HostJob job) {
+        try {
+            CompletableFuture<Long> ping = discovery == Discovery.ICMP
+                ? icmpEngine.ping(job.ip)
+                : portScanEngine.ping(job.address, pingPorts, source);
+            ping.whenComplete((rttNanos, error) -> {
+                if (rttNanos == null || rttNanos < 0) {
+                    job.result.complete(null);
+                } else {
+                    alive(job, rttNanos);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Scan cancelled while waiting for the throttle
+            job.result.cancel(false);
+        }
+    }
+
+    private void alive(HostJob job, long rttNanos) {
+        job.row = job.store.add(job.ip, via != null ? via.label() : null); // Shown by its IP until reverse DNS answers
+        job.store.setRtt(job.row, rttNanos);
+        listener.hostDiscovered(job.store.view(job.row));
+        fanOut(job);
+    }
+
+    private void fanOut(HostJob job) {
+        try {
+            portStage.put(job);
+            dnsStage.put(job);
+            macStage.put(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.result.cancel(false);
+        }
+    }
+
+    // Stage 2: port probes. TCP runs either one virtual thread per port or on the shared
+    // engine; UDP services always go through the UDP engine's selector loop. Open TLS ports
+    // then have their certificate fetched by the TLS engine.
+    private void probePorts(HostJob job) {
+        try {
+            CompletableFuture<int[]> udp = udpProbeEngine.scanPorts(job.address, udpPorts, job.source);
+            CompletableFuture<PortScanEngine.OpenPorts> tcp;
+            if (portStage.executor.mode() == ScanExecutor.Mode.VIRTUAL) {
+                tcp = CompletableFuture.completedFuture(scanPortsOnVirtualThreads(job, portStage.executor));
+            } else {
+                // The worker is released as soon as the probes are queued; the selectors complete the host
+                tcp = portScanEngine.scanPorts(job.address, ports, job.source).exceptionally(error -> PortScanEngine.OpenPorts.NONE);
+            }
+            tcp.thenCompose(open -> fetchCertificates(job, open)).whenComplete((certificates, error) ->
+                udp.whenComplete((openUdp, udpError) -> setOpenPorts(job, tcp.resultNow(), certificates, udp)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Scan cancelled while waiting for a probe slot
+            job.result.cancel(false);
+        }
+    }
+
+    // Certificates of the open ports in tlsPorts, indexed like open.ports(). This runs on the
+    // selector thread that completed the TCP probes, which must not wait for the throttle, so
+    // hosts with TLS ports queue their handshakes from a virtual thread.
+    private CompletableFuture<TlsHandshakeEngine.PeerCertificate[]> fetchCertificates(HostJob job, PortScanEngine.OpenPorts open) {
+        TlsHandshakeEngine.PeerCertificate[] certificates = new TlsHandshakeEngine.PeerCertificate[open.ports().length];
+        if (tlsPorts == null || Arrays.stream(open.ports()).noneMatch(tlsPorts::contains)) {
+            return CompletableFuture.completedFuture(certificates);
+        }
+        CompletableFuture<TlsHandshakeEngine.PeerCertificate[]> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("tls-fetch").start(() -> {
+            List<CompletableFuture<?>> handshakes = new ArrayList<>();
+            try {
+                for (int i = 0; i < certificates.length; i++) {
+                    if (!tlsPorts.contains(open.ports()[i])) continue;
+                    int index = i;
+                    handshakes.add(tlsEngine.fetch(job.address, open.ports()[i], job.source)
+                        .thenAccept(certificate -> certificates[index] = certificate));
+                }
+            } catch (InterruptedException e) {
+                // Cancelled: report the certificates already being fetched
+            }
+            CompletableFuture.allOf(handshakes.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> result.complete(certificates));
+        });
+        return result;
+    }
+
+    private void setOpenPorts(HostJob job, PortScanEngine.OpenPorts tcp, TlsHandshakeEngine.PeerCertificate[] certificates,
+                              CompletableFuture<int[]> udp) {
+        if (certificates == null) {
+            certificates = new TlsHandshakeEngine.PeerCertificate[tcp.ports().length];
+        }
+        job.store.setPorts(job.row, tcp, certificates, udp.state() == Future.State.SUCCESS ? udp.resultNow() : new int[0]);
+        job.enrichmentDone();
+    }
+
+    // Fork one blocking connect per port; leaving the scope cancels probes still running.
+    // Blocking connects cannot be shortened mid-flight, so each uses the estimate known when it starts.
+    private PortScanEngine.OpenPorts scanPortsOnVirtualThreads(HostJob job, ScanExecutor executor) throws InterruptedException {
+        boolean[] open = new boolean[ports.length]; // Each probe writes only its own slot
+        String[] services = new String[ports.length];
+        HttpResponseParser.Response[] http = new HttpResponseParser.Response[ports.length];
+        try (ScanExecutor.TaskScope scope = executor.openScope()) {
+            for (int i = 0; i < ports.length; i++) {
+                int index = i;
+                scope.fork(() -> {
+                    ScanThrottle throttle = portScanEngine.throttle();
+                    throttle.acquire(); // Same pacing and socket cap as the NIO engine
+                    try {
+                        open[index] = probePort(job, ports[index], services, http, index);
+                    } finally {
+                        throttle.release();
+                    }
+                    return null;
+                });
+            }
+            scope.join(); // Completing the children publishes their slots to this thread
+        }
+        int openCount = 0;
+        for (boolean isOpen : open) {
+            if (isOpen) openCount++;
+        }
+        int[] openPorts = new int[openCount];
+        String[] openServices = new String[openCount];
+        HttpResponseParser.Response[] openHttp = new HttpResponseParser.Response[openCount];
+        for (int i = 0, j = 0; i < ports.length; i++) {
+            if (open[i]) {
+                openPorts[j] = ports[i];
+                openServices[j] = services[i];
+                openHttp[j++] = http[i];
+            }
+        }
+        return new PortScanEngine.OpenPorts(openPorts, openServices, openHttp);
+    }
+
+    // Blocking connect attempt, followed by a banner grab on the open connection; cheap when
+    // run on a virtual thread
+    private boolean probePort(HostJob job, int port, String[] services, HttpResponseParser.Response[] http, int index) {
+        RttEstimator rttEstimator = portScanEngine.rttEstimator();
+        InetAddress host = job.address;
+        long start = System.nanoTime();
+        InetSocketAddress target = new InetSocketAddress(job.address, port);
+        try (Socket socket = new Socket()) {
+            if (job.source != null) {
+                socket.bind(new InetSocketAddress(job.source, 0));
+            }
+            socket.connect(target, rttEstimator.timeoutFor(host)); // Attempt to connect to port
+            rttEstimator.sample(host, System.nanoTime() - start);
+            if (bannerGrabber != null && !bannerGrabber.skips(port)) { // TLS ports get their certificate instead
+                ByteBuffer banner = bannerGrabber.grab(socket, target);
+                services[index] = bannerGrabber.identify(banner);
+                http[index] = bannerGrabber.http(banner);
+            }
+            return true;
+        } catch (ConnectException e) {
+            rttEstimator.sample(host, System.nanoTime() - start); // A refused connect is still a round trip
+            return false;
+        } catch (IOException ignored) {
+            return false; // Ignore exception if connection fails
+        }
+    }
+
+    // Stage 3: reverse DNS through the shared cache. The lookup is asynchronous, so a DNS
+    // worker only starts it; cached and negatively cached addresses complete immediately.
+    private void resolveHostname(HostJob job) {
+        if (job.ipv6) {
+            job.store.setHostname(job.row, job.knownName); // mDNS name from discovery; no PTR lookup for IPv6
+            job.enrichmentDone();
+            return;
+        }
+        reverseDns.lookup(job.ip).whenComplete((hostname, error) -> {
+            job.store.setHostname(job.row, hostname);
+            job.enrichmentDone();
+        });
+    }
+
+    // Stage 4: MAC address from the neighbor table, and its vendor. Hosts behind a router never appear
+    // there, since their frames carry the router's MAC instead.
+    private void resolveMacAddress(HostJob job) {
+        long mac = job.ipv6 ? job.knownMac : neighbors.lookup(job.ip); // IPv6 MACs come from the neighbor cache read by discovery
+        job.store.setMac(job.row, mac, mac != NeighborTable.UNKNOWN ? ouiIndex.vendor(mac) : null);
+        job.enrichmentDone();
+    }
+
+    // A host travelling through the pipeline; its results go straight into the store
+    private final class HostJob {
+        final int ip; // IPv4 address, or Ipv6Address.key() for an IPv6 host
+        final String host;
+        final InetAddress address;
+        final InetAddress source; // Local address probes are bound to; null for IPv6, routed by scope
+        final DeviceStore store;
+        final boolean ipv6;
+        final long high, low; // IPv6 address; zero for IPv4
+        final long knownMac; // IPv6 only: from discovery
+        final String knownName;
+        final CompletableFuture<DeviceInfo> result = new CompletableFuture<>();
+        final AtomicInteger pendingStages = new AtomicInteger(ENRICHMENT_STAGES);
+        int row = -1; // Store row, assigned by discovery before any enrichment stage runs
+
+        HostJob(int ip, DeviceStore store) {
+            this.ip = ip;
+            this.store = store;
+            this.host = TargetSpec.formatAddress(ip);
+            this.address = TargetSpec.toInetAddress(ip); // No name lookup for a literal address
+            this.source = HostScanPipeline.this.source;
+            this.ipv6 = false;
+            this.high = 0;
+            this.low = 0;
+            this.knownMac = NeighborTable.UNKNOWN;
+            this.knownName = null;
+        }
+
+        HostJob(Ipv6HostSet hosts, int index, NetworkInterface scope) {
+            this.high = hosts.high(index);
+            this.low = hosts.low(index);
+            this.ip = Ipv6Address.key(high, low);
+            this.host = Ipv6Address.format(high, low);
+            this.address = Ipv6Address.toInetAddress(high, low, scope);
+            this.source = null;
+            this.store = HostScanPipeline.this.store;
+            this.ipv6 = true;
+            this.knownMac = hosts.mac(index);
+            this.knownName = hosts.name(index);
+        }
+
+        // The last enrichment stage to finish completes the host
+        void enrichmentDone() {
+            if (pendingStages.decrementAndGet() == 0) {
+                store.markComplete(row);
+                result.complete(store.view(row));
+            }
+        }
+    }
+
+    // One stage: a bounded inbox drained by a dispatcher thread into the stage's own capped executor
+    private final class Stage {
+        final ScanExecutor executor;
+        private final BlockingQueue<HostJob> inbox;
+        private final Thread dispatcher;
+
+        Stage(String name, int parallelism, Consumer<HostJob> work) {
+            executor = ScanExecutor.create(config.executionMode, parallelism);
+            inbox = new ArrayBlockingQueue<>(config.hostWindow);
+            dispatcher = Thread.ofPlatform().name("pipeline-" + name).daemon().start(() -> {
+                try {
+                    while (true) {
+                        HostJob job = inbox.take();
+                        executor.submit(() -> {
+                            try {
+                                work.accept(job);
+                            } catch (RuntimeException e) {
+                                listener.log("Error in " + name + " stage for " + job.host + ": " + e.getMessage());
+                                job.result.completeExceptionally(e);
+                            }
+                            return null;
+                        });
+                    }
+                } catch (InterruptedException | RejectedExecutionException e) {
+                    // Pipeline closed or cancelled
+                }
+            });
+        }
+
+        void put(HostJob job) throws InterruptedException {
+            inbox.put(job);
+        }
+
+        void cancel() {
+            inbox.clear();
+            executor.cancel();
+        }
+
+        void close() {
+            dispatcher.interrupt();
+            executor.close();
+        }
+    }
+}
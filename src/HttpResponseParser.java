@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Pulls the status line, Server header and HTML <title> out of the start of an HTTP response
+// as read by the banner grabber. Works on the received bytes in place with absolute reads;
+// only the three values themselves are decoded into strings.
+final class HttpResponseParser {
+    private static final int MAX_TITLE = 200; // Characters kept of a title
+
+    // What a scan keeps of one HTTP response; server and title are null if absent
+    record Response(int status, String reason, String server, String title) {
+        // "200 OK"
+        String statusLine() {
+            return reason.isEmpty() ? String.valueOf(status) : status + " " + reason;
+        }
+    }
+
+    private HttpResponseParser() {
+    }
+
+    // Parse the bytes between the buffer's position and limit; null unless they start with an
+    // HTTP status line. A response cut off by the byte cap still yields what was received.
+    static Response parse(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        if (!regionMatches(buffer, start, end, "HTTP/")) return null;
+        int lineEnd = lineEnd(buffer, start, end);
+        int space = indexOf(buffer, start, lineEnd, (byte) ' ');
+        if (space < 0 || space + 4 > lineEnd) return null;
+        int status = 0;
+        for (int i = space + 1; i < space + 4; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) return null;
+            status = status * 10 + digit;
+        }
+        String reason = decode(buffer, Math.min(space + 5, lineEnd), lineEnd, false);
+
+        String server = null;
+        int body = end; // Headers may be cut off before the blank line
+        int line = next(buffer, lineEnd, end);
+        while (line < end) {
+            int headerEnd = lineEnd(buffer, line, end);
+            if (headerEnd == line) { // Blank line: the body follows
+                body = next(buffer, headerEnd, end);
+                break;
+            }
+            if (server == null && regionMatches(buffer, line, headerEnd, "server:")) {
+                server = decode(buffer, line + 7, headerEnd, false);
+            }
+            line = next(buffer, headerEnd, end);
+        }
+        return new Response(status, reason, server == null || server.isEmpty() ? null : server, title(buffer, body, end));
+    }
+
+    // Text of the first <title> element, with whitespace collapsed and common entities decoded
+    private static String title(ByteBuffer buffer, int from, int end) {
+        int open = find(buffer, from, end, "<title");
+        if (open < 0) return null;
+        int textStart = indexOf(buffer, open + 6, end, (byte) '>');
+        if (textStart < 0) return null;
+        textStart++;
+        int close = find(buffer, textStart, end, "</title");
+        String title = decode(buffer, textStart, close < 0 ? end : close, true);
+        if (title.isEmpty()) return null;
+        return title.length() > MAX_TITLE ? title.substring(0, MAX_TITLE) : title;
+    }
+
+    // Case-insensitive search for an ASCII lower-case needle
+    private static int find(ByteBuffer buffer, int from, int end, String needle) {
+        for (int i = from; i <= end - needle.length(); i++) {
+            if (regionMatches(buffer, i, end, needle)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(ByteBuffer buffer, int from, int end, String prefix) {
+        if (end - from < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            int b = buffer.get(from + i);
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            int c = prefix.charAt(i);
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            if (b != c) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int end, byte value) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    // End of the line starting at from, excluding CR LF (or a bare LF)
+    private static int lineEnd(ByteBuffer buffer, int from, int end) {
+        int lf = indexOf(buffer, from, end, (byte) '\n');
+        if (lf < 0) return end;
+        return lf > from && buffer.get(lf - 1) == '\r' ? lf - 1 : lf;
+    }
+
+    // Start of the line after the one ending at lineEnd
+    private static int next(ByteBuffer buffer, int lineEnd, int end) {
+        if (lineEnd < end && buffer.get(lineEnd) == '\r') lineEnd++;
+        return Math.min(lineEnd + 1, end);
+    }
+
+    // Trimmed text of a byte range; headers are ISO-8859-1, HTML is taken as UTF-8
+    private static String decode(ByteBuffer buffer, int from, int end, boolean html) {
+        byte[] bytes = new byte[Math.max(0, end - from)];
+        buffer.get(from, bytes);
+        String text = new String(bytes, html ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        if (!html) return text.trim();
+        text = text.replaceAll("\\s+", " ").trim();
+        if (text.indexOf('&') < 0) return text;
+        return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+            .replace("&#39;", "'").replace("&nbsp;", " ").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteOrder;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+
+// ICMP echo prober on one Linux ping socket (socket(AF_INET, SOCK_DGRAM, IPPROTO_ICMP)), which
+// any user in net.ipv4.ping_group_range may open, called through the Foreign Function & Memory
+// API. A single thread sends the queued echo requests in a batch, then polls the socket and
+// matches replies to requests by sequence number and source address; a timer wheel expires
+// the rest. Where ping sockets are not allowed, root gets a raw ICMP socket instead.
+// java.lang.foreign is a preview API in JDK 21, so this class only loads with --enable-preview
+// there; nothing else refers to it unless ICMP discovery is configured.
+final class IcmpEchoEngine implements AutoCloseable {
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512;
+    private static final int AF_INET = 2;
+    private static final int SOCK_DGRAM = 2;
+    private static final int SOCK_RAW = 3;
+    private static final int IPPROTO_ICMP = 1;
+    private static final int MSG_DONTWAIT = 0x40;
+    private static final short POLLIN = 1;
+    private static final int EAGAIN = 11;
+    private static final int EINTR = 4;
+    private static final int ECHO_REPLY = 0;
+    private static final int ECHO_REQUEST = 8;
+    private static final int PACKET_BYTES = 8 + 16; // Header and a 16-byte payload
+    private static final ValueLayout.OfInt NETWORK_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfShort NETWORK_SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private static final MethodHandle SOCKET, SENDTO, RECVFROM, POLL, CLOSE;
+    private static final MemoryLayout CAPTURE_LAYOUT = Linker.Option.captureStateLayout();
+    private static final long ERRNO_OFFSET = CAPTURE_LAYOUT.byteOffset(MemoryLayout.PathElement.groupElement("errno"));
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        Linker.Option errno = Linker.Option.captureCallState("errno");
+        SOCKET = linker.downcallHandle(libc.find("socket").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT), errno);
+        SENDTO = linker.downcallHandle(libc.find("sendto").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT), errno);
+        RECVFROM = linker.downcallHandle(libc.find("recvfrom").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS), errno);
+        POLL = linker.downcallHandle(libc.find("poll").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT), errno);
+        CLOSE = linker.downcallHandle(libc.find("close").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    }
+
+    private final ScanThrottle throttle; // Shared with the port engines
+    private final RttEstimator rttEstimator;
+    private final int fd;
+    private final boolean raw; // Raw socket: replies carry the IP header, and the identifier is ours to check
+    private final short identifier; // Only meaningful on a raw socket; ping sockets use their port
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment packet = arena.allocate(PACKET_BYTES);
+    private final MemorySegment receiveBuffer = arena.allocate(2048);
+    private final MemorySegment address = arena.allocate(16); // struct sockaddr_in
+    private final MemorySegment addressLength = arena.allocate(4);
+    private final MemorySegment pollFd = arena.allocate(8); // struct pollfd
+    private final MemorySegment captureState = arena.allocate(CAPTURE_LAYOUT.byteSize());
+    private final BlockingDeque<Echo> pending = new LinkedBlockingDeque<>();
+    private final TimerWheel<Echo> wheel = new TimerWheel<>(TICK_MILLIS, WHEEL_SIZE);
+    private final Echo[] inFlight = new Echo[65536]; // By sequence number
+    private int inFlightCount;
+    private int nextSequence;
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    private IcmpEchoEngine(ScanThrottle throttle, RttEstimator rttEstimator, int fd, boolean raw) {
+        this.throttle = throttle;
+        this.rttEstimator = rttEstimator;
+        this.fd = fd;
+        this.raw = raw;
+        this.identifier = (short) ProcessHandle.current().pid();
+        pollFd.set(ValueLayout.JAVA_INT, 0, fd);
+        pollFd.set(ValueLayout.JAVA_SHORT, 4, POLLIN);
+        loop = Thread.ofPlatform().name("icmp-echo").daemon().start(this::run);
+    }
+
+    // Open a ping socket, or a raw one if ping sockets are not permitted; fails on other
+    // systems than Linux and where neither socket may be opened
+    static IcmpEchoEngine open(ScanThrottle throttle, RttEstimator rttEstimator) throws IOException {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            throw new IOException("ICMP ping sockets are only available on Linux");
+        }
+        try (Arena call = Arena.ofConfined()) {
+            MemorySegment state = call.allocate(CAPTURE_LAYOUT.byteSize());
+            int fd = (int) SOCKET.invokeExact(state, AF_INET, SOCK_DGRAM, IPPROTO_ICMP);
+            if (fd >= 0) return new IcmpEchoEngine(throttle, rttEstimator, fd, false);
+            int pingErrno = state.get(ValueLayout.JAVA_INT, ERRNO_OFFSET);
+            fd = (int) SOCKET.invokeExact(state, AF_INET, SOCK_RAW, IPPROTO_ICMP);
+            if (fd >= 0) return new IcmpEchoEngine(throttle, rttEstimator, fd, true);
+            throw new IOException("cannot open an ICMP socket (errno " + pingErrno
+                + "); add this user's group to net.ipv4.ping_group_range");
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Send one echo request to an int-encoded host; completes with the round trip in
+    // nanoseconds, or -1 if no reply arrives before the host's liveness deadline (the full
+    // timeout unless the host itself has answered before). Blocks the caller only while the
+    // throttle holds it back.
+    CompletableFuture<Long> ping(int host) throws InterruptedException {
+        throttle.acquire();
+        Echo echo = new Echo(host, rttEstimator.livenessTimeoutFor(host));
+        pending.add(echo);
+        return echo.result;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        loop.interrupt();
+    }
+
+    // One echo request awaiting its reply; only touched by the loop thread once queued
+    private static final class Echo {
+        final int host;
+        final int timeoutMs;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        int sequence = -1;
+        long sentNanos;
+        TimerWheel.Timeout<Echo> timeout;
+
+        Echo(int host, int timeoutMs) {
+            this.host = host;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                if (inFlightCount == 0) {
+                    Echo first = pending.take(); // Idle: sleep until there is something to send
+                    pending.addFirst(first);
+                }
+                sendPending();
+                int waitMs = (int) Math.min(wheel.millisUntilNextTick(System.nanoTime()), TICK_MILLIS);
+                int ready = (int) POLL.invokeExact(captureState, pollFd, 1L, waitMs);
+                if (ready > 0) {
+                    receiveReplies();
+                }
+                wheel.advance(System.nanoTime(), echo -> finish(echo, -1));
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (Throwable e) {
+            // A failing native call ends the loop; outstanding echoes are failed below
+        } finally {
+            failOutstanding();
+        }
+    }
+
+    // Send every queued request; a full socket buffer leaves the rest for the next round
+    private void sendPending() throws Throwable {
+        Echo echo;
+        while ((echo = pending.poll()) != null) {
+            if (inFlightCount == inFlight.length) {
+                pending.addFirst(echo);
+                return;
+            }
+            while (inFlight[nextSequence] != null) nextSequence = (nextSequence + 1) & 0xFFFF;
+            writeRequest(nextSequence);
+            address.fill((byte) 0);
+            address.set(ValueLayout.JAVA_SHORT, 0, (short) AF_INET);
+            address.set(NETWORK_INT, 4, echo.host);
+            echo.sentNanos = System.nanoTime();
+            long sent = (long) SENDTO.invokeExact(captureState, fd, packet, (long) PACKET_BYTES, MSG_DONTWAIT, address, 16);
+            if (sent < 0) {
+                int errno = captureState.get(ValueLayout.JAVA_INT, ERRNO_OFFSET);
+                if (errno == EAGAIN || errno == EINTR) {
+                    pending.addFirst(echo);
+                    return;
+                }
+                finish(echo, -1); // e.g. no route to host
+                continue;
+            }
+            echo.sequence = nextSequence;
+            inFlight[nextSequence] = echo;
+            inFlightCount++;
+            nextSequence = (nextSequence + 1) & 0xFFFF;
+            echo.timeout = wheel.schedule(echo, echo.sentNanos + echo.timeoutMs * 1_000_000L);
+        }
+    }
+
+    private void writeRequest(int sequence) {
+        packet.fill((byte) 0);
+        packet.set(ValueLayout.JAVA_BYTE, 0, (byte) ECHO_REQUEST);
+        packet.set(NETWORK_SHORT, 4, identifier); // Replaced by the socket's port on a ping socket
+        packet.set(NETWORK_SHORT, 6, (short) sequence);
+        packet.set(NETWORK_INT, 8, 0x5A4E6574); // "ZNet"
+        packet.set(NETWORK_SHORT, 2, checksum(packet, PACKET_BYTES)); // The kernel recomputes it on a ping socket
+    }
+
+    // Drain every reply waiting on the socket
+    private void receiveReplies() throws Throwable {
+        while (true) {
+            addressLength.set(ValueLayout.JAVA_INT, 0, 16);
+            long length = (long) RECVFROM.invokeExact(captureState, fd, receiveBuffer, receiveBuffer.byteSize(), MSG_DONTWAIT,
+                address, addressLength);
+            long now = System.nanoTime();
+            if (length < 0) return; // EAGAIN once drained
+            int offset = raw ? (receiveBuffer.get(ValueLayout.JAVA_BYTE, 0) & 0x0F) * 4 : 0; // Skip the IP header
+            if (length < offset + 8) continue;
+            if (receiveBuffer.get(ValueLayout.JAVA_BYTE, offset) != ECHO_REPLY) continue;
+            if (raw && receiveBuffer.get(NETWORK_SHORT, offset + 4) != identifier) continue; // Another process's ping
+            int sequence = receiveBuffer.get(NETWORK_SHORT, offset + 6) & 0xFFFF;
+            Echo echo = inFlight[sequence];
+            if (echo == null || echo.host != address.get(NETWORK_INT, 4)) continue; // Late or stray reply
+            finish(echo, now - echo.sentNanos);
+        }
+    }
+
+    // Complete an echo exactly once, with its round trip or -1
+    private void finish(Echo echo, long rttNanos) {
+        if (echo.result.isDone()) return;
+        if (echo.sequence >= 0) {
+            inFlight[echo.sequence] = null;
+            inFlightCount--;
+        }
+        wheel.cancel(echo.timeout);
+        throttle.release();
+        if (rttNanos >= 0) {
+            rttEstimator.sample(echo.host, rttNanos);
+        }
+        echo.result.complete(rttNanos);
+    }
+
+    private void failOutstanding() {
+        for (Echo echo : inFlight) {
+            if (echo != null) finish(echo, -1);
+        }
+        Echo echo;
+        while ((echo = pending.poll()) != null) {
+            finish(echo, -1);
+        }
+        try {
+            // invokeExact needs the call site typed as close(2)'s int result. The result is ignored:
+            // Linux frees the descriptor even when close reports an error, and nothing is left to retry.
+            int result = (int) CLOSE.invokeExact(fd);
+        } catch (Throwable ignored) {
+            // Nothing useful to do if close fails
+        }
+        arena.close();
+    }
+
+    // RFC 1071 Internet checksum
+    private static short checksum(MemorySegment data, int length) {
+        int sum = 0;
+        for (int i = 0; i + 1 < length; i += 2) {
+            sum += data.get(NETWORK_SHORT, i) & 0xFFFF;
+        }
+        if ((length & 1) != 0) {
+            sum += (data.get(ValueLayout.JAVA_BYTE, length - 1) & 0xFF) << 8;
+        }
+        while ((sum >>> 16) != 0) sum = (sum & 0xFFFF) + (sum >>> 16);
+        return (short) ~sum;
+    }
+}
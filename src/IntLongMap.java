@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+// Open-addressing hash map from int keys to non-negative long values, with no boxing and
+// no per-entry objects. Not thread-safe; callers synchronize.
+final class IntLongMap {
+    static final long MISSING = -1; // Returned by get() for an absent key
+
+    private int[] keys;
+    private long[] values; // MISSING marks a free slot
+    private int size;
+
+    IntLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new long[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    long get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; values[slot] != MISSING; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return values[slot];
+        }
+        return MISSING;
+    }
+
+    // Insert or replace; value must be non-negative
+    void put(int key, long value) {
+        if (value < 0) throw new IllegalArgumentException("Negative value: " + value);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != MISSING) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) grow(); // Keep the load factor at or below 1/2
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        Arrays.fill(values, MISSING);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != MISSING) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    // Spread sequential addresses across the table (murmur3 finalizer)
+    private static int hash(int key) {
+        int h = key * 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
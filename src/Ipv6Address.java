@@ -0,0 +1,164 @@
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+
+// IPv6 addresses as a pair of longs, the high and low 64 bits in network order. Tables of
+// them are two primitive arrays, so discovery and the device store keep no object per
+// address; an InetAddress is only built when a socket needs one.
+final class Ipv6Address {
+    private Ipv6Address() {
+    }
+
+    static long high(byte[] bytes) {
+        return toLong(bytes, 0);
+    }
+
+    static long low(byte[] bytes) {
+        return toLong(bytes, 8);
+    }
+
+    // Parse a textual IPv6 address (with "::", an embedded dotted quad and a "%scope" suffix
+    // allowed) into out[0] and out[1]; false if the text is not an IPv6 address
+    static boolean parse(String text, long[] out) {
+        int percent = text.indexOf('%');
+        String address = percent >= 0 ? text.substring(0, percent) : text;
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1; // Group index where "::" stands
+        int i = 0;
+        int length = address.length();
+        if (address.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        }
+        while (i < length) {
+            int end = i;
+            while (end < length && address.charAt(end) != ':') end++;
+            String group = address.substring(i, end);
+            if (group.indexOf('.') >= 0) { // Trailing dotted quad: two groups
+                if (end != length || count > 6) return false;
+                int v4;
+                try {
+                    v4 = TargetSpec.parseAddress(group);
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+                groups[count++] = v4 >>> 16;
+                groups[count++] = v4 & 0xFFFF;
+                break;
+            }
+            if (group.isEmpty() || group.length() > 4 || count == 8) return false;
+            int value = 0;
+            for (int c = 0; c < group.length(); c++) {
+                int digit = Character.digit(group.charAt(c), 16);
+                if (digit < 0) return false;
+                value = value << 4 | digit;
+            }
+            groups[count++] = value;
+            if (end == length) break;
+            if (end + 1 < length && address.charAt(end + 1) == ':') {
+                if (gap >= 0) return false; // Only one "::"
+                gap = count;
+                end++;
+            } else if (end + 1 == length) {
+                return false; // Trailing single ':'
+            }
+            i = end + 1;
+        }
+        if (gap < 0 ? count != 8 : count > 7) return false;
+        if (gap >= 0) { // Shift the groups after "::" to the end
+            int tail = count - gap;
+            System.arraycopy(groups, gap, groups, 8 - tail, tail);
+            for (int g = gap; g < 8 - tail; g++) groups[g] = 0;
+        }
+        long high = 0;
+        long low = 0;
+        for (int g = 0; g < 4; g++) {
+            high = high << 16 | groups[g];
+            low = low << 16 | groups[g + 4];
+        }
+        out[0] = high;
+        out[1] = low;
+        return true;
+    }
+
+    // RFC 5952 text: lower-case hex, leading zeros dropped, the longest run of zero groups as "::"
+    static String format(long high, long low) {
+        int[] groups = new int[8];
+        for (int g = 0; g < 4; g++) {
+            groups[g] = (int) (high >>> (48 - 16 * g)) & 0xFFFF;
+            groups[g + 4] = (int) (low >>> (48 - 16 * g)) & 0xFFFF;
+        }
+        int bestStart = -1;
+        int bestLength = 1; // A single zero group is not compressed
+        for (int g = 0; g < 8; ) {
+            if (groups[g] != 0) {
+                g++;
+                continue;
+            }
+            int start = g;
+            while (g < 8 && groups[g] == 0) g++;
+            if (g - start > bestLength) {
+                bestStart = start;
+                bestLength = g - start;
+            }
+        }
+        StringBuilder sb = new StringBuilder(39);
+        for (int g = 0; g < 8; g++) {
+            if (g == bestStart) {
+                sb.append("::");
+                g += bestLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') sb.append(':');
+            sb.append(Integer.toHexString(groups[g]));
+        }
+        return sb.toString();
+    }
+
+    // fe80::/10, only reachable with the interface as scope
+    static boolean isLinkLocal(long high) {
+        return (high >>> 54) == 0x3FA;
+    }
+
+    static boolean isMulticast(long high) {
+        return (high >>> 56) == 0xFF;
+    }
+
+    // Socket address for a probe; link-local addresses are scoped to the interface they were found on
+    static InetAddress toInetAddress(long high, long low, NetworkInterface scope) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+        }
+        try {
+            if (scope != null && isLinkLocal(high)) {
+                return Inet6Address.getByAddress(null, bytes, scope);
+            }
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e); // Cannot happen for a 16-byte address
+        }
+    }
+
+    // 32-bit key standing in for an IPv6 host where hosts are stored by int (DeviceStore rows,
+    // the scan history index). It lies in 240.0.0.0/4, which is never an IPv4 scan target; the
+    // /64 prefix picks the upper bits and the interface ID only the last byte, so two hosts on
+    // one link can share a key. It is not an identity: anything keyed by host state (RTT
+    // estimates) uses the full address, and lookups by key must compare the full address.
+    static int key(long high, long low) {
+        int prefix = Long.hashCode(high * 0x9E3779B97F4A7C15L) & 0x0FFFFF;
+        int host = Long.hashCode(low * 0x9E3779B97F4A7C15L) & 0xFF;
+        return 0xF0000000 | prefix << 8 | host;
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Finds the IPv6 hosts on one link. A /64 cannot be swept, so hosts are collected instead
+// from three sources: an echo request to the all-nodes group ff02::1, sent with the system
+// ping since the JDK has no ICMPv6 socket, whose replies are read from its output; the
+// kernel neighbor cache, which that echo has just filled, for addresses and MACs; and mDNS,
+// where every responder answers a DNS-SD query sent to ff02::fb from its own address and
+// may list more addresses in AAAA records.
+final class Ipv6Discovery {
+    private static final int MDNS_PORT = 5353;
+    private static final byte[] MDNS_GROUP = {(byte) 0xFF, 0x02, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFB};
+    private static final int TYPE_AAAA = 28;
+    private static final String[][] PING_COMMANDS = {{"ping", "-6", "-c", "2", "-i", "0.5"}, {"ping6", "-c", "2", "-i", "0.5"}};
+
+    private final int waitMs;
+
+    Ipv6Discovery(int waitMs) {
+        this.waitMs = waitMs;
+    }
+
+    // Hosts on the link of iface, without the interface's own addresses; empty if the
+    // interface has no IPv6 address. Takes about waitMs.
+    Ipv6HostSet discover(NetworkInterface iface) throws InterruptedException {
+        Ipv6HostSet hosts = new Ipv6HostSet();
+        Ipv6HostSet own = new Ipv6HostSet();
+        for (InetAddress address : Collections.list(iface.getInetAddresses())) {
+            if (address instanceof Inet6Address) {
+                byte[] bytes = address.getAddress();
+                own.add(Ipv6Address.high(bytes), Ipv6Address.low(bytes));
+            }
+        }
+        if (own.size() == 0) return hosts;
+        Process ping = startPing(iface.getName());
+        queryMdns(iface, hosts);
+        if (ping != null) {
+            readPing(ping, hosts);
+        }
+        readNeighborCache(iface.getName(), hosts);
+        return withoutOwn(hosts, own);
+    }
+
+    // Echo to ff02::1 in the background; null if no ping command is available
+    private Process startPing(String iface) {
+        int seconds = Math.max(1, (waitMs + 999) / 1000);
+        for (String[] command : PING_COMMANDS) {
+            List<String> args = new ArrayList<>(List.of(command));
+            if (command[0].equals("ping")) {
+                args.add("-w");
+                args.add(String.valueOf(seconds)); // iputils: stop after this long
+            }
+            args.add("ff02::1%" + iface);
+            try {
+                return new ProcessBuilder(args).redirectErrorStream(true).start();
+            } catch (IOException e) {
+                // Not installed; try the next one
+            }
+        }
+        return null;
+    }
+
+    // Every "from <address>" in the ping output is a host that answered
+    private void readPing(Process ping, Ipv6HostSet hosts) throws InterruptedException {
+        if (!ping.waitFor(waitMs + 1000L, TimeUnit.MILLISECONDS)) {
+            ping.destroy(); // Output already written stays readable
+        }
+        long[] address = new long[2];
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ping.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int from = line.indexOf("from ");
+                if (from < 0) continue;
+                int start = from + 5;
+                int end = start;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end)) && line.charAt(end) != ',') end++;
+                String token = line.substring(start, end);
+                if (token.endsWith(":")) token = token.substring(0, token.length() - 1);
+                if (Ipv6Address.parse(token, address)) {
+                    add(hosts, address);
+                }
+            }
+        } catch (IOException e) {
+            // Ping died; the neighbor cache still has whoever answered
+        }
+    }
+
+    // Send one DNS-SD service enumeration query to ff02::fb and collect the responders until
+    // waitMs has passed. The query comes from an ephemeral port, so answers are unicast back.
+    private void queryMdns(NetworkInterface iface, Ipv6HostSet hosts) {
+        try (DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET6);
+             Selector selector = Selector.open()) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, iface);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 255); // Link-local traffic must keep hop limit 255
+            channel.bind(new InetSocketAddress(0));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            InetAddress group = Inet6Address.getByAddress(null, MDNS_GROUP, iface);
+            channel.send(DnsPtrResolver.encodeQuery(0, "_services._dns-sd._udp.local"), new InetSocketAddress(group, MDNS_PORT));
+            ByteBuffer buffer = ByteBuffer.allocate(9000); // mDNS allows jumbo-frame sized messages
+            long[] address = new long[2];
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+            long remaining;
+            while ((remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                selector.select(remaining);
+                selector.selectedKeys().clear();
+                InetSocketAddress sender;
+                while ((sender = (InetSocketAddress) channel.receive(buffer.clear())) != null) {
+                    byte[] bytes = sender.getAddress().getAddress();
+                    if (bytes.length != 16) continue;
+                    address[0] = Ipv6Address.high(bytes);
+                    address[1] = Ipv6Address.low(bytes);
+                    add(hosts, address);
+                    readAddressRecords(buffer.flip(), hosts);
+                }
+            }
+        } catch (IOException e) {
+            // No multicast on this link: the other sources still apply
+        }
+    }
+
+    // Add every AAAA record of an mDNS response, naming the host after the record's owner
+    private static void readAddressRecords(ByteBuffer message, Ipv6HostSet hosts) {
+        try {
+            int questions = message.getShort(4) & 0xFFFF;
+            int records = (message.getShort(6) & 0xFFFF) + (message.getShort(8) & 0xFFFF) + (message.getShort(10) & 0xFFFF);
+            int position = 12;
+            for (int i = 0; i < questions; i++) {
+                position = DnsPtrResolver.readName(message, position, new StringBuilder()) + 4;
+            }
+            StringBuilder owner = new StringBuilder();
+            for (int i = 0; i < records; i++) {
+                owner.setLength(0);
+                position = DnsPtrResolver.readName(message, position, owner);
+                int type = message.getShort(position) & 0xFFFF;
+                int length = message.getShort(position + 8) & 0xFFFF;
+                position += 10;
+                if (type == TYPE_AAAA && length == 16) {
+                    long high = message.getLong(position);
+                    long low = message.getLong(position + 8);
+                    if (!Ipv6Address.isMulticast(high)) {
+                        hosts.setName(hosts.add(high, low), owner.toString());
+                    }
+                }
+                position += length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated or malformed: keep the records read so far
+        }
+    }
+
+    // Addresses and MACs from the kernel's neighbor cache for this interface: `ip -6 neigh`
+    // on Linux, `ndp -an` on BSD and macOS. FAILED and INCOMPLETE entries are skipped.
+    private static void readNeighborCache(String iface, Ipv6HostSet hosts) throws InterruptedException {
+        List<List<String>> commands = List.of(List.of("ip", "-6", "neigh", "show", "dev", iface), List.of("ndp", "-an"));
+        long[] address = new long[2];
+        for (List<String> command : commands) {
+            Process process;
+            try {
+                process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            } catch (IOException e) {
+                continue; // Not installed
+            }
+            boolean filter = !command.contains("dev"); // ndp lists every interface
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains("FAILED") || line.contains("INCOMPLETE") || line.contains("incomplete")) continue;
+                    if (filter && !line.contains(iface)) continue;
+                    for (String token : line.trim().split("\\s+")) {
+                        if (!Ipv6Address.parse(token, address)) continue;
+                        int index = add(hosts, address);
+                        long mac = NeighborTable.findMac(line);
+                        if (index >= 0 && mac != NeighborTable.UNKNOWN) hosts.setMac(index, mac);
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // Keep what was read
+            }
+            if (process.waitFor() == 0) return;
+        }
+    }
+
+    // Add a unicast address; returns its index, or -1 for multicast and unspecified addresses
+    private static int add(Ipv6HostSet hosts, long[] address) {
+        if (Ipv6Address.isMulticast(address[0]) || (address[0] == 0 && address[1] == 0)) return -1;
+        return hosts.add(address[0], address[1]);
+    }
+
+    private static Ipv6HostSet withoutOwn(Ipv6HostSet hosts, Ipv6HostSet own) {
+        Ipv6HostSet result = new Ipv6HostSet();
+        for (int i = 0; i < hosts.size(); i++) {
+            if (own.indexOf(hosts.high(i), hosts.low(i)) >= 0) continue; // One of ours
+            int index = result.add(hosts.high(i), hosts.low(i));
+            result.setMac(index, hosts.mac(i));
+            result.setName(index, hosts.name(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+// Insertion-ordered set of IPv6 hosts found by discovery, with the MAC and name learned for
+// each. Addresses are long pairs in parallel arrays behind an open-addressing index, so
+// adding a host allocates nothing until the arrays grow.
+final class Ipv6HostSet {
+    private long[] highs = new long[16];
+    private long[] lows = new long[16];
+    private long[] macs = new long[16]; // NeighborTable.UNKNOWN if not learned
+    private String[] names = new String[16]; // mDNS host name, or null
+    private int[] slots = new int[32]; // Index + 1 per slot, 0 = empty; power of two
+    private int size;
+
+    // Add a host if new; returns its index either way
+    int add(long high, long low) {
+        int existing = indexOf(high, low);
+        if (existing >= 0) return existing;
+        if (size == highs.length) {
+            int capacity = size * 2;
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            macs = Arrays.copyOf(macs, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        int index = size++;
+        highs[index] = high;
+        lows[index] = low;
+        macs[index] = NeighborTable.UNKNOWN;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(index);
+        }
+        return index;
+    }
+
+    // Index of a host, or -1 if absent
+    int indexOf(long high, long low) {
+        int mask = slots.length - 1;
+        for (int slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) return -1;
+            if (highs[entry - 1] == high && lows[entry - 1] == low) return entry - 1;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long high(int index) {
+        return highs[index];
+    }
+
+    long low(int index) {
+        return lows[index];
+    }
+
+    long mac(int index) {
+        return macs[index];
+    }
+
+    void setMac(int index, long mac) {
+        macs[index] = mac;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    void setName(int index, String name) {
+        names[index] = name;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int index = 0; index < size; index++) {
+            insert(index);
+        }
+    }
+
+    private void insert(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(highs[index], lows[index]) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = index + 1;
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,54 @@
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+// One IPv4 address of an up, non-loopback network interface, with the prefix length the
+// interface was configured with. Scanning through it binds probes to its address, so every
+// probe leaves through that interface even when several share a default route.
+record LocalInterface(String name, InetAddress address, int prefixLength, NetworkInterface networkInterface) {
+    // IPv4 address as an int in network order
+    int ip() {
+        return TargetSpec.parseAddress(address.getHostAddress());
+    }
+
+    // The interface's network in CIDR notation; networks wider than minPrefix are narrowed
+    // to the block of that size around the interface's own address
+    String network(int minPrefix) {
+        int prefix = Math.max(prefixLength, minPrefix);
+        int mask = prefix == 0 ? 0 : -1 << (32 - prefix);
+        return TargetSpec.formatAddress(ip() & mask) + "/" + prefix;
+    }
+
+    // "eth0 192.168.1.10/24"
+    String label() {
+        return name + " " + address.getHostAddress() + "/" + prefixLength;
+    }
+
+    // Every IPv4 address on up, non-loopback interfaces, in the order the system lists them.
+    // names restricts the result to the given interfaces; empty means all of them. An address
+    // whose network was already listed on another interface is skipped, so no host is scanned twice.
+    static List<LocalInterface> enumerate(Set<String> names, int minPrefix) throws SocketException {
+        List<LocalInterface> result = new ArrayList<>();
+        List<String> networks = new ArrayList<>();
+        for (NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (iface.isLoopback() || !iface.isUp()) continue;
+            if (!names.isEmpty() && !names.contains(iface.getName())) continue;
+            for (InterfaceAddress interfaceAddress : iface.getInterfaceAddresses()) {
+                if (!(interfaceAddress.getAddress() instanceof Inet4Address)) continue;
+                LocalInterface local = new LocalInterface(iface.getName(), interfaceAddress.getAddress(),
+                    interfaceAddress.getNetworkPrefixLength(), iface);
+                String network = local.network(minPrefix);
+                if (networks.contains(network)) continue;
+                networks.add(network);
+                result.add(local);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// IPv4-to-MAC map built from the operating system's neighbor (ARP) table: /proc/net/arp on
+// Linux, otherwise the output of `ip neigh` or `arp -a`. The table is read once per scan and
+// re-read at most every refreshMillis when a host is missing, so each lookup is a hash probe
+// rather than a syscall. Re-reads only add or update entries.
+final class NeighborTable {
+    static final long UNKNOWN = IntLongMap.MISSING;
+
+    private static final Path PROC_ARP = Path.of("/proc/net/arp");
+    private static final List<List<String>> COMMANDS = List.of(List.of("ip", "-4", "neigh", "show"), List.of("arp", "-an"), List.of("arp", "-a"));
+    // An IPv4 address and a MAC written as six 1-2 digit hex groups separated by ':' or '-'
+    private static final Pattern IPV4 = Pattern.compile("(?<![\\d.])(\\d{1,3}(?:\\.\\d{1,3}){3})(?![\\d.])");
+    private static final Pattern MAC = Pattern.compile("(?<![0-9A-Fa-f:-])([0-9A-Fa-f]{1,2}(?:[:-][0-9A-Fa-f]{1,2}){5})(?![0-9A-Fa-f:-])");
+
+    private final long refreshNanos;
+    private final IntLongMap macs = new IntLongMap(256);
+    private long lastReadNanos;
+    private boolean loaded;
+    private List<String> command; // Command source in use when /proc/net/arp is unavailable
+
+    NeighborTable(long refreshMillis) {
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+    }
+
+    // Re-read the neighbor table now; called once at the start of every scan
+    synchronized void refresh() {
+        read();
+    }
+
+    // MAC of an int-encoded IPv4 address as a 48-bit value, or UNKNOWN. A miss re-reads the
+    // table if the last read is older than refreshMillis, since discovery adds new neighbors.
+    synchronized long lookup(int address) {
+        if (!loaded) read();
+        long mac = macs.get(address);
+        if (mac == UNKNOWN && System.nanoTime() - lastReadNanos >= refreshNanos) {
+            read();
+            mac = macs.get(address);
+        }
+        return mac;
+    }
+
+    // "AA-BB-CC-DD-EE-FF", the format the scanner has always shown
+    static String formatMac(long mac) {
+        StringBuilder sb = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            sb.append(String.format("%02X", (mac >>> shift) & 0xFF));
+            if (shift > 0) sb.append('-');
+        }
+        return sb.toString();
+    }
+
+    private void read() {
+        lastReadNanos = System.nanoTime();
+        if (!loaded) addLocalInterfaces(); // Our own addresses never appear in the neighbor table
+        loaded = true;
+        try {
+            if (command == null && Files.isReadable(PROC_ARP)) {
+                try (BufferedReader reader = Files.newBufferedReader(PROC_ARP, StandardCharsets.US_ASCII)) {
+                    parse(reader);
+                }
+                return;
+            }
+            for (List<String> candidate : command != null ? List.of(command) : COMMANDS) {
+                if (runCommand(candidate)) {
+                    command = candidate;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Table unreadable: keep what was read before; unmatched hosts stay unknown
+        }
+    }
+
+    private boolean runCommand(List<String> command) throws IOException {
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            return false; // Command not installed
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            parse(reader);
+        }
+        try {
+            return process.waitFor() == 0;
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Any line holding an IPv4 address and a non-zero MAC is a neighbor entry; headers,
+    // incomplete entries ("00:00:00:00:00:00" or no lladdr) and FAILED lines do not match
+    private void parse(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.contains("FAILED") || line.contains("INCOMPLETE") || line.contains("incomplete")) continue;
+            Matcher ip = IPV4.matcher(line);
+            Matcher mac = MAC.matcher(line);
+            if (!ip.find() || !mac.find()) continue;
+            int address;
+            try {
+                address = TargetSpec.parseAddress(ip.group(1));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            long value = parseMac(mac.group(1));
+            if (value != 0) macs.put(address, value);
+        }
+    }
+
+    // First non-zero MAC on a line of neighbor-table output, or UNKNOWN
+    static long findMac(String line) {
+        Matcher mac = MAC.matcher(line);
+        if (!mac.find()) return UNKNOWN;
+        long value = parseMac(mac.group(1));
+        return value != 0 ? value : UNKNOWN;
+    }
+
+    private static long parseMac(String text) {
+        long mac = 0;
+        for (String group : text.split("[:-]")) {
+            mac = (mac << 8) | Integer.parseInt(group, 16);
+        }
+        return mac;
+    }
+
+    private void addLocalInterfaces() {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces.hasMoreElements()) {
+                NetworkInterface iface = interfaces.nextElement();
+                byte[] hardware = iface.getHardwareAddress();
+                if (hardware == null || hardware.length != 6) continue;
+                long mac = 0;
+                for (byte b : hardware) mac = (mac << 8) | (b & 0xFF);
+                Enumeration<InetAddress> addresses = iface.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    if (addresses.nextElement() instanceof Inet4Address address) {
+                        macs.put(TargetSpec.parseAddress(address.getHostAddress()), mac);
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // No interface list: only the neighbor table is used
+        }
+    }
+}
@@ -9,21 +9,29 @@ import java.util.concurrent.*;
 
 // Main class for the Network Scanner application
 public class NetworkScanner extends JFrame {
-    // Constants for timeout and thread pool size
-    private static final int TIMEOUT = 1000; // milliseconds
-    private static final int THREAD_POOL_SIZE = 255;
-
     // UI components declaration
     private final JTree resultTree;
     private final DefaultTreeModel treeModel;
     private final DefaultMutableTreeNode rootNode;
     private final JProgressBar progressBar;
     private final JButton scanButton, clearButton;
+    private final JToggleButton monitorButton;
     private final JTextArea logArea;
 
+    // Engine, DNS cache and other scan machinery kept for the lifetime of the window
+    private final transient ScanContext scanContext;
+    private final transient ScanThrottle throttle; // Rate limit and in-flight cap, adjustable mid-scan
+    private final transient ScanConfig config;
+    private transient SwingWorker<Void, ?> currentWorker; // Scan or monitoring in progress, if any
+    private final transient Map<String, DefaultMutableTreeNode> deviceNodes = new HashMap<>(); // Tree node per IP address
+    private final transient Map<String, DefaultMutableTreeNode> interfaceNodes = new HashMap<>(); // Parent node per scanned interface
+
     // Constructor for the Network Scanner application
-    public NetworkScanner() {
+    public NetworkScanner() throws IOException {
         super("ZNet Scanner v1.0.1"); // Set window title
+        config = ScanConfig.fromSystemProperties();
+        scanContext = ScanContext.create(config);
+        throttle = scanContext.portScanEngine.throttle();
 
         // Initialize tree components for displaying scan results
         rootNode = new DefaultMutableTreeNode("Devices");
@@ -35,6 +43,7 @@ public class NetworkScanner extends JFrame {
         // Initialize buttons for network scan and result clearing
         scanButton = new JButton("Scan Network", resizeImageIcon("scan_icon.png", 22, 22)); // Button with scan icon
         clearButton = new JButton("Clear Results", resizeImageIcon("clear_icon.png", 22, 22)); // Button with clear icon
+        monitorButton = new JToggleButton("Monitor"); // Keeps rescanning; only changes update the tree
         progressBar = new JProgressBar(0, 100);
         progressBar.setStringPainted(true); // Show progress percentage on the bar
         progressBar.setForeground(Color.GREEN); // Set progress bar color to green
@@ -45,6 +54,17 @@ public class NetworkScanner extends JFrame {
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
         controlPanel.add(scanButton);
         controlPanel.add(clearButton);
+        controlPanel.add(monitorButton);
+
+        // Throttle controls; changes apply immediately, including to a scan in progress
+        JSpinner rateSpinner = new JSpinner(new SpinnerNumberModel((int) config.ratePerSecond, 0, 1_000_000, 100));
+        JSpinner inFlightSpinner = new JSpinner(new SpinnerNumberModel(config.maxInFlight, 1, 65_536, 64));
+        rateSpinner.addChangeListener(e -> throttle.setRate((Integer) rateSpinner.getValue()));
+        inFlightSpinner.addChangeListener(e -> throttle.setMaxInFlight((Integer) inFlightSpinner.getValue()));
+        controlPanel.add(new JLabel("Rate (conn/s, 0 = unlimited):"));
+        controlPanel.add(rateSpinner);
+        controlPanel.add(new JLabel("In-flight:"));
+        controlPanel.add(inFlightSpinner);
 
         // Scroll panes for tree view and log area
         JScrollPane treeScrollPane = new JScrollPane(resultTree);
@@ -63,6 +83,13 @@ public class NetworkScanner extends JFrame {
         // Event handling for scan and clear buttons
         scanButton.addActionListener(e -> scanNetwork());
         clearButton.addActionListener(e -> clearResults());
+        monitorButton.addActionListener(e -> {
+            if (monitorButton.isSelected()) {
+                startMonitoring();
+            } else if (currentWorker != null) {
+                currentWorker.cancel(true);
+            }
+        });
 
         // Frame settings
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Exit application on close
@@ -85,37 +112,39 @@ public class NetworkScanner extends JFrame {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
-                    String localIP = getLocalIPAddress(); // Get local IP address
-                    String subnet = localIP.substring(0, localIP.lastIndexOf('.') + 1);
-                    log("Local IP: " + localIP);
-                    log("Scanning subnet: " + subnet + "0/24\n");
-
-                    ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE); // Thread pool for concurrent scanning
-                    List<Future<DeviceInfo>> futures = new ArrayList<>();
-
-                    // Submit tasks for scanning each host in the subnet
-                    for (int i = 1; i <= 254; i++) {
-                        final String host = subnet + i;
-                        futures.add(executor.submit(() -> scanHost(host)));
+                    // Configured targets, or the network of every interface
+                    List<ScanSession.Scope> scopes = config.resolveScopes(NetworkScanner.this::log);
+                    long total = ScanSession.size(scopes);
+                    log("Scanning " + total + " hosts: " + scopes + "\n");
+                    if (total == 0) {
+                        return null; // Everything was excluded
                     }
 
-                    int progress = 0;
-                    // Process completed scan results
-                    for (Future<DeviceInfo> future : futures) {
-                        try {
-                            DeviceInfo deviceInfo = future.get(); // Get scanned device information
-                            if (deviceInfo != null) {
-                                publish(deviceInfo); // Publish device info to update UI
-                            }
-                            progress++;
-                            setProgress((int)((progress / 254.0) * 100)); // Update progress bar
-                        } catch (InterruptedException | ExecutionException ex) {
-                            log("Error: " + ex.getMessage());
+                    log("Execution mode: " + config.executionMode + " (max " + config.maxConcurrency + " hosts in discovery)");
+                    // Hosts are published in completion order, each as soon as its own scan ends
+                    new ScanSession(scanContext).run(scopes, new ResultSink() {
+                        @Override
+                        public void hostDiscovered(DeviceInfo device) {
+                            publish(device); // Show live hosts before enrichment finishes
+                        }
+
+                        @Override
+                        public void hostCompleted(DeviceInfo device) {
+                            publish(device); // Publish device info to update UI
                         }
-                    }
 
-                    executor.shutdown(); // Shutdown the thread pool
-                } catch (SocketException e) {
+                        @Override
+                        public void progress(long done, long total) {
+                            setProgress((int) (done * 100 / total)); // Update progress bar
+                        }
+
+                        @Override
+                        public void log(String message) {
+                            NetworkScanner.this.log(message);
+                        }
+                    });
+                    log("Reverse DNS: " + scanContext.reverseDns.stats());
+                } catch (SocketException | IllegalArgumentException e) {
                     log("Error: " + e.getMessage());
                 }
                 return null;
@@ -124,19 +153,25 @@ public class NetworkScanner extends JFrame {
             // Update UI with intermediate results during scanning
             @Override
             protected void process(List<DeviceInfo> chunks) {
-                for (DeviceInfo deviceInfo : chunks) {
-                    addDeviceToTree(deviceInfo); // Add scanned device to tree view
-                }
+                addDevicesToTree(chunks); // Add or refresh scanned devices in tree view
             }
 
             // Actions to perform after scanning is complete
             @Override
             protected void done() {
+                if (currentWorker != this) {
+                    return; // Cancelled by monitoring, which now owns the controls
+                }
                 scanButton.setEnabled(true); // Re-enable scan button
+                if (isCancelled()) {
+                    log("Scan cancelled");
+                    return;
+                }
                 expandAllNodes(resultTree, 0, resultTree.getRowCount()); // Expand all tree nodes
                 JOptionPane.showMessageDialog(NetworkScanner.this, "Scan completed!"); // Show completion message
             }
         };
+        currentWorker = worker;
 
         // Listen for changes in worker progress (e.g., updating progress bar)
         worker.addPropertyChangeListener(evt -> {
@@ -148,95 +183,201 @@ public class NetworkScanner extends JFrame {
         worker.execute(); // Start the background worker thread
     }
 
-    // Method to retrieve local IP address
-    private String getLocalIPAddress() throws SocketException {
-        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-        while (interfaces.hasMoreElements()) {
-            NetworkInterface iface = interfaces.nextElement();
-            if (iface.isLoopback() || !iface.isUp()) continue;
-
-            Enumeration<InetAddress> addresses = iface.getInetAddresses();
-            while(addresses.hasMoreElements()) {
-                InetAddress addr = addresses.nextElement();
-                if (addr instanceof Inet4Address) {
-                    return addr.getHostAddress(); // Return IPv4 address
+    // Start continuous monitoring of the configured targets: live hosts are rechecked on a short
+    // cadence and the other addresses swept on a long one, and only hosts that come up, change
+    // or go down touch the tree. Runs until the toggle or Clear Results stops it.
+    private void startMonitoring() {
+        clearResults();
+        scanButton.setEnabled(false);
+        progressBar.setIndeterminate(true);
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                try {
+                    List<ScanSession.Scope> scopes = config.resolveScopes(NetworkScanner.this::log);
+                    if (ScanSession.size(scopes) == 0) {
+                        return null;
+                    }
+                    log("Monitoring " + scopes + ": rechecking live hosts every " + config.monitorLiveMs / 1000
+                        + " s, sweeping every " + config.monitorSweepMs / 1000 + " s");
+                    new ScanMonitor(scanContext).run(scopes, new ResultSink() {
+                        @Override
+                        public void hostCompleted(DeviceInfo device) {
+                            SwingUtilities.invokeLater(() -> addDevicesToTree(List.of(device)));
+                        }
+
+                        @Override
+                        public void hostLost(DeviceInfo device) {
+                            SwingUtilities.invokeLater(() -> removeDeviceNode(device));
+                        }
+
+                        @Override
+                        public void log(String message) {
+                            NetworkScanner.this.log(message);
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    // Stopped
+                } catch (SocketException | IllegalArgumentException e) {
+                    log("Error: " + e.getMessage());
                 }
+                return null;
             }
+
+            @Override
+            protected void done() {
+                scanButton.setEnabled(true);
+                progressBar.setIndeterminate(false);
+                monitorButton.setSelected(false);
+                log("Monitoring stopped");
+            }
+        };
+        currentWorker = worker;
+        worker.execute();
+    }
+
+    // Take a device that stopped answering out of the tree
+    private void removeDeviceNode(DeviceInfo deviceInfo) {
+        DefaultMutableTreeNode deviceNode = deviceNodes.remove(deviceInfo.ipAddress());
+        if (deviceNode == null) return;
+        DefaultMutableTreeNode parent = (DefaultMutableTreeNode) deviceNode.getParent();
+        int index = parent.getIndex(deviceNode);
+        parent.remove(index);
+        treeModel.nodesWereRemoved(parent, new int[] {index}, new Object[] {deviceNode});
+    }
+
+    // Method to add a batch of device updates to the tree view. New devices are appended and
+    // announced with a single nodesWereInserted event per parent; devices published again after
+    // enrichment only refresh their own subtree, so the rest of the tree keeps its expansion state.
+    // Devices found through an interface are grouped under a node for that interface.
+    private void addDevicesToTree(List<DeviceInfo> devices) {
+        Map<DefaultMutableTreeNode, Integer> firstNewIndex = new LinkedHashMap<>(); // Parent -> its child count before this batch
+        Set<DefaultMutableTreeNode> newNodes = new HashSet<>();
+        for (DeviceInfo deviceInfo : devices) {
+            DefaultMutableTreeNode deviceNode = deviceNodes.get(deviceInfo.ipAddress());
+            if (deviceNode == null) {
+                DefaultMutableTreeNode parent = parentNode(deviceInfo.localInterface());
+                firstNewIndex.putIfAbsent(parent, parent.getChildCount());
+                deviceNode = new DefaultMutableTreeNode();
+                deviceNodes.put(deviceInfo.ipAddress(), deviceNode);
+                parent.add(deviceNode); // Add device node to its interface, or the root
+                newNodes.add(deviceNode);
+            }
+            if (newNodes.contains(deviceNode)) {
+                fillDeviceNode(deviceNode, deviceInfo); // Not shown yet, no events needed
+            } else {
+                refreshDeviceNode(deviceNode, deviceInfo);
+            }
+        }
+        for (Map.Entry<DefaultMutableTreeNode, Integer> entry : firstNewIndex.entrySet()) {
+            DefaultMutableTreeNode parent = entry.getKey();
+            int[] indices = new int[parent.getChildCount() - entry.getValue()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = entry.getValue() + i;
+            }
+            treeModel.nodesWereInserted(parent, indices); // One event per parent for the whole batch
         }
-        throw new SocketException("No network interface found");
     }
 
-    // Method to scan a specific host and retrieve device information
-    private DeviceInfo scanHost(String host) {
-        try {
-            InetAddress inetAddress = InetAddress.getByName(host);
-            if (inetAddress.isReachable(TIMEOUT)) { // Check if host is reachable
-                DeviceInfo deviceInfo = new DeviceInfo();
-                deviceInfo.ipAddress = host; // Set IP address
-                deviceInfo.hostname = inetAddress.getCanonicalHostName(); // Set hostname
-                deviceInfo.macAddress = getMacAddress(host); // Get MAC address
-                deviceInfo.openPorts = scanPorts(host); // Scan open ports
-                return deviceInfo; // Return device information
+    // Node holding the devices of one interface, created (empty) on first use; the root for
+    // devices scanned without an interface
+    private DefaultMutableTreeNode parentNode(String localInterface) {
+        if (localInterface == null) {
+            return rootNode;
+        }
+        DefaultMutableTreeNode node = interfaceNodes.get(localInterface);
+        if (node == null) {
+            node = new DefaultMutableTreeNode("Interface " + localInterface);
+            interfaceNodes.put(localInterface, node);
+            rootNode.add(node);
+            treeModel.nodesWereInserted(rootNode, new int[] {rootNode.getChildCount() - 1});
+        }
+        return node;
+    }
+
+    // Rebuild a visible device's subtree and restore the expansion state of it and its children
+    private void refreshDeviceNode(DefaultMutableTreeNode deviceNode, DeviceInfo deviceInfo) {
+        TreePath path = new TreePath(deviceNode.getPath());
+        boolean expanded = resultTree.isExpanded(path);
+        List<Integer> expandedChildren = new ArrayList<>();
+        for (int i = 0; i < deviceNode.getChildCount(); i++) {
+            if (resultTree.isExpanded(path.pathByAddingChild(deviceNode.getChildAt(i)))) {
+                expandedChildren.add(i);
+            }
+        }
+        fillDeviceNode(deviceNode, deviceInfo);
+        treeModel.nodeStructureChanged(deviceNode); // Only this device's subtree is refreshed
+        if (expanded) {
+            resultTree.expandPath(path);
+        }
+        for (int i : expandedChildren) {
+            if (i < deviceNode.getChildCount()) {
+                resultTree.expandPath(path.pathByAddingChild(deviceNode.getChildAt(i)));
             }
-        } catch (IOException e) {
-            log("Error scanning " + host + ": " + e.getMessage()); // Log scanning error
         }
-        return null; // Return null if scan fails
     }
 
-    // Method to retrieve MAC address of a host
-    private String getMacAddress(String host) {
-        try {
-            InetAddress ip = InetAddress.getByName(host);
-            NetworkInterface network = NetworkInterface.getByInetAddress(ip);
-            if (network == null) {
-                return "Unknown (Host not directly reachable)";
+    // Set a device node's label and children from the device information
+    private void fillDeviceNode(DefaultMutableTreeNode deviceNode, DeviceInfo deviceInfo) {
+        String ipAddress = deviceInfo.ipAddress();
+        String hostname = deviceInfo.hostname();
+        deviceNode.setUserObject(ipAddress + (hostname.equals(ipAddress) ? "" : " (" + hostname + ")"));
+        deviceNode.removeAllChildren();
+        deviceNode.add(new DefaultMutableTreeNode("MAC Address: " + deviceInfo.macAddress()));
+        String vendor = deviceInfo.vendor();
+        if (vendor != null) {
+            deviceNode.add(new DefaultMutableTreeNode("Vendor: " + vendor));
+        }
+        double rtt = deviceInfo.rttMillis();
+        if (rtt >= 0) {
+            deviceNode.add(new DefaultMutableTreeNode(String.format("Round Trip: %.2f ms", rtt)));
+        }
+        DefaultMutableTreeNode portsNode = new DefaultMutableTreeNode(deviceInfo.isComplete() ? "Open Ports" : "Open Ports (scanning...)");
+        int portCount = deviceInfo.portCount();
+        for (int i = 0; i < portCount; i++) {
+            int port = deviceInfo.port(i);
+            String service = deviceInfo.portService(i); // From the banner; the port number is only a guess
+            DefaultMutableTreeNode portNode = new DefaultMutableTreeNode("Port " + port + " (" + (service != null ? service : getServiceName(port)) + ")");
+            HttpResponseParser.Response http = deviceInfo.portHttp(i);
+            if (http != null) {
+                addHttpNodes(portNode, http);
             }
-            byte[] mac = network.getHardwareAddress();
-            if (mac == null) {
-                return "Unknown (Cannot retrieve MAC)";
+            TlsHandshakeEngine.PeerCertificate certificate = deviceInfo.portCertificate(i);
+            if (certificate != null) {
+                addCertificateNodes(portNode, certificate);
             }
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < mac.length; i++) {
-                sb.append(String.format("%02X%s", mac[i], (i < mac.length - 1) ? "-" : ""));
+            portsNode.add(portNode);
+        }
+        deviceNode.add(portsNode); // Add ports node to device node
+        int[] udpPorts = deviceInfo.openUdpPorts();
+        if (udpPorts.length > 0) {
+            DefaultMutableTreeNode udpNode = new DefaultMutableTreeNode("Open UDP Ports");
+            for (int port : udpPorts) {
+                udpNode.add(new DefaultMutableTreeNode("Port " + port + "/udp (" + getServiceName(port) + ")"));
             }
-            return sb.toString(); // Return formatted MAC address
-        } catch (UnknownHostException e) {
-            return "Unknown (Host not found)";
-        } catch (SocketException e) {
-            return "Unknown (Network interface error)";
-        } catch (Exception e) {
-            return "Unknown (Error: " + e.getMessage() + ")";
+            deviceNode.add(udpNode);
         }
     }
 
-    // Method to scan open ports of a host
-    private List<Integer> scanPorts(String host) {
-        List<Integer> openPorts = new ArrayList<>();
-        int[] portsToScan = {80, 443, 22, 21, 3389, 8080, 1723}; // Common ports to scan
-        for (int port : portsToScan) {
-            try (Socket socket = new Socket()) {
-                socket.connect(new InetSocketAddress(host, port), TIMEOUT); // Attempt to connect to port
-                openPorts.add(port); // Add port to list if connection successful
-            } catch (IOException ignored) {
-                // Ignore exception if connection fails
-            }
+    // Status line, Server header and page title of an HTTP port
+    private void addHttpNodes(DefaultMutableTreeNode portNode, HttpResponseParser.Response http) {
+        portNode.add(new DefaultMutableTreeNode("HTTP Status: " + http.statusLine()));
+        if (http.server() != null) {
+            portNode.add(new DefaultMutableTreeNode("Server: " + http.server()));
+        }
+        if (http.title() != null) {
+            portNode.add(new DefaultMutableTreeNode("Title: " + http.title()));
         }
-        return openPorts; // Return list of open ports
     }
 
-    // Method to add device information to the tree view
-    private void addDeviceToTree(DeviceInfo deviceInfo) {
-        DefaultMutableTreeNode deviceNode = new DefaultMutableTreeNode(deviceInfo.ipAddress +
-            (deviceInfo.hostname.equals(deviceInfo.ipAddress) ? "" : " (" + deviceInfo.hostname + ")"));
-        deviceNode.add(new DefaultMutableTreeNode("MAC Address: " + deviceInfo.macAddress));
-        DefaultMutableTreeNode portsNode = new DefaultMutableTreeNode("Open Ports");
-        for (int port : deviceInfo.openPorts) {
-            portsNode.add(new DefaultMutableTreeNode("Port " + port + " (" + getServiceName(port) + ")"));
+    // Subject, alternative names, issuer and expiry of a TLS port's certificate
+    private void addCertificateNodes(DefaultMutableTreeNode portNode, TlsHandshakeEngine.PeerCertificate certificate) {
+        portNode.add(new DefaultMutableTreeNode("Certificate: " + certificate.commonName()));
+        if (!certificate.subjectAltNames().isEmpty()) {
+            portNode.add(new DefaultMutableTreeNode("Alternative Names: " + String.join(", ", certificate.subjectAltNames())));
         }
-        deviceNode.add(portsNode); // Add ports node to device node
-        rootNode.add(deviceNode); // Add device node to root node
-        treeModel.reload(); // Reload tree model to reflect changes
+        portNode.add(new DefaultMutableTreeNode("Issuer: " + (certificate.selfSigned() ? "self-signed" : certificate.issuerName())));
+        portNode.add(new DefaultMutableTreeNode("Expires: " + certificate.notAfter().substring(0, 10) + (certificate.expired() ? " (expired)" : "")));
     }
 
     // Method to retrieve service name based on port number
@@ -249,13 +390,23 @@ public class NetworkScanner extends JFrame {
             case 3389 -> "RDP";
             case 8080 -> "HTTP-Proxy";
             case 1723 -> "PPTP";
+            case 53 -> "DNS";
+            case 123 -> "NTP";
+            case 161 -> "SNMP";
+            case 1900 -> "SSDP";
+            case 5353 -> "mDNS";
             default -> "Unknown";
         };
     }
 
     // Method to clear all scan results and log messages
     private void clearResults() {
+        if (currentWorker != null && !currentWorker.isDone()) {
+            currentWorker.cancel(true); // Clearing during a scan cancels it
+        }
         rootNode.removeAllChildren(); // Remove all child nodes from root node
+        deviceNodes.clear();
+        interfaceNodes.clear();
         treeModel.reload(); // Reload tree model to reflect removal
         logArea.setText(""); // Clear text in log area
     }
@@ -279,17 +430,19 @@ public class NetworkScanner extends JFrame {
         }
     }
 
-    // Inner class to encapsulate device information
-    private static class DeviceInfo {
-        String ipAddress;
-        String hostname;
-        String macAddress;
-        List<Integer> openPorts;
-    }
-
-    // Main method to start the application
+    // Main method to start the application; command-line arguments or a headless
+    // environment run the scanner without a window
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(NetworkScanner::new); // Create and show GUI on Event Dispatch Thread
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            System.exit(HeadlessScanner.run(args));
+        }
+        SwingUtilities.invokeLater(() -> { // Create and show GUI on Event Dispatch Thread
+            try {
+                new NetworkScanner();
+            } catch (IOException | IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(null, "Cannot start scan engine: " + e.getMessage());
+            }
+        });
     }
 
     // Method to resize ImageIcon to specified dimensions
@@ -0,0 +1,207 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// MAC vendor lookup keyed by the 24-bit IEEE OUI. The registry text (oui.txt, oui.csv or
+// nmap-mac-prefixes) is compiled once into a sorted binary table cached under ~/.znet and
+// memory-mapped on later runs, so the ~35k vendors cost almost no heap. A lookup is a
+// binary search over the mapped prefixes (at most 16 probes); without any registry file a
+// small built-in table of common vendors is used.
+final class OuiIndex {
+    // Where distributions install the IEEE registry
+    private static final List<Path> SYSTEM_SOURCES = List.of(
+        Path.of("/usr/share/ieee-data/oui.txt"), Path.of("/usr/share/hwdata/oui.txt"),
+        Path.of("/usr/share/misc/oui.txt"), Path.of("/usr/share/ieee-data/oui.csv"),
+        Path.of("/usr/share/nmap/nmap-mac-prefixes"));
+    private static final Path CACHE = Path.of(System.getProperty("user.home"), ".znet", "oui.idx");
+    private static final int MAGIC = 0x4F554931; // "OUI1"
+    private static final int HEADER = 24; // magic, count, source size, source mtime seconds
+
+    // Common vendors on home and lab networks, used when no registry is installed
+    private static final String[] BUILT_IN = {
+        "00000C", "Cisco Systems", "00044B", "NVIDIA", "00055D", "D-Link", "000569", "VMware",
+        "000C29", "VMware", "000E58", "Sonos", "001132", "Synology", "00155D", "Microsoft (Hyper-V)",
+        "00163E", "Xensource", "001788", "Philips Lighting", "001B21", "Intel", "001C42", "Parallels",
+        "000393", "Apple", "0017F2", "Apple", "005056", "VMware", "080027", "Oracle VirtualBox",
+        "18B430", "Nest Labs", "240AC4", "Espressif", "30AEA4", "Espressif", "525400", "QEMU/KVM",
+        "B827EB", "Raspberry Pi Foundation", "DCA632", "Raspberry Pi Trading", "E45F01", "Raspberry Pi Trading",
+        "28CDC1", "Raspberry Pi Trading"};
+
+    private final ByteBuffer table; // Header, sorted int prefixes, int name offsets, length-prefixed names
+    private final int count;
+    private final int namesStart;
+
+    private OuiIndex(ByteBuffer table) {
+        this.table = table;
+        this.count = table.getInt(4);
+        this.namesStart = HEADER + count * 8;
+    }
+
+    // Load the registry from the given file, or the first system registry found; null source
+    // and no system registry gives the built-in table
+    static OuiIndex load(String source) {
+        Path path = source != null ? Path.of(source) : SYSTEM_SOURCES.stream().filter(Files::isReadable).findFirst().orElse(null);
+        if (path == null) {
+            return new OuiIndex(compile(builtIn(), 0, 0));
+        }
+        try {
+            long size = Files.size(path);
+            long modified = Files.getLastModifiedTime(path).toInstant().getEpochSecond();
+            ByteBuffer cached = mapCache(size, modified);
+            if (cached != null) return new OuiIndex(cached);
+            ByteBuffer compiled = compile(parse(path), size, modified);
+            writeCache(compiled);
+            return new OuiIndex(compiled);
+        } catch (IOException | RuntimeException e) {
+            return new OuiIndex(compile(builtIn(), 0, 0)); // Unreadable or malformed registry
+        }
+    }
+
+    // Vendor of a 48-bit MAC, or null if the prefix is not registered
+    String vendor(long mac) {
+        int prefix = (int) (mac >>> 24) & 0xFFFFFF;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = table.getInt(HEADER + mid * 4);
+            if (value < prefix) {
+                low = mid + 1;
+            } else if (value > prefix) {
+                high = mid - 1;
+            } else {
+                return name(mid);
+            }
+        }
+        if ((mac & 0x0200_0000_0000L) != 0) {
+            return "Locally administered"; // Randomized or virtual MAC; never in the registry
+        }
+        return null;
+    }
+
+    int size() {
+        return count;
+    }
+
+    private String name(int index) {
+        int position = namesStart + table.getInt(HEADER + count * 4 + index * 4);
+        byte[] bytes = new byte[table.getShort(position) & 0xFFFF];
+        table.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Accepts IEEE oui.txt ("00-00-0C   (hex)  Cisco"), oui.csv ("MA-L,00000C,Cisco,...")
+    // and nmap-mac-prefixes ("00000C Cisco") lines; everything else is skipped
+    private static Map<Integer, String> parse(Path path) throws IOException {
+        Map<Integer, String> vendors = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String prefix;
+                String name;
+                int hex = line.indexOf("(hex)");
+                if (hex > 0) {
+                    prefix = line.substring(0, hex).trim().replace("-", "");
+                    name = line.substring(hex + 5).trim();
+                } else if (line.startsWith("MA-L,")) {
+                    String[] fields = line.split(",", 4);
+                    if (fields.length < 3) continue;
+                    prefix = fields[1];
+                    name = fields[2].startsWith("\"") ? line.substring(line.indexOf('"') + 1, line.indexOf('"', line.indexOf('"') + 1)) : fields[2];
+                } else if (line.length() > 7 && line.charAt(6) == ' ' && !line.startsWith("#") && !line.contains("(base 16)")) {
+                    prefix = line.substring(0, 6);
+                    name = line.substring(7).trim();
+                } else {
+                    continue;
+                }
+                if (prefix.length() != 6 || name.isEmpty()) continue;
+                try {
+                    vendors.put(Integer.parseInt(prefix, 16), name);
+                } catch (NumberFormatException e) {
+                    // Not a prefix line after all
+                }
+            }
+        }
+        return vendors;
+    }
+
+    private static Map<Integer, String> builtIn() {
+        Map<Integer, String> vendors = new TreeMap<>();
+        for (int i = 0; i < BUILT_IN.length; i += 2) {
+            vendors.put(Integer.parseInt(BUILT_IN[i], 16), BUILT_IN[i + 1]);
+        }
+        return vendors;
+    }
+
+    // Lay out the sorted prefixes, their name offsets and the de-duplicated names
+    private static ByteBuffer compile(Map<Integer, String> vendors, long sourceSize, long sourceModified) {
+        Map<String, Integer> offsets = new HashMap<>();
+        List<byte[]> names = new ArrayList<>();
+        int[] nameOffsets = new int[vendors.size()];
+        int namesLength = 0;
+        int i = 0;
+        for (String name : vendors.values()) {
+            Integer offset = offsets.get(name); // Vendors with many prefixes store their name once
+            if (offset == null) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF) bytes = Arrays.copyOf(bytes, 0xFFFF);
+                offset = namesLength;
+                offsets.put(name, offset);
+                names.add(bytes);
+                namesLength += 2 + bytes.length;
+            }
+            nameOffsets[i++] = offset;
+        }
+        ByteBuffer table = ByteBuffer.allocate(HEADER + vendors.size() * 8 + namesLength);
+        table.putInt(MAGIC).putInt(vendors.size()).putLong(sourceSize).putLong(sourceModified);
+        for (int prefix : vendors.keySet()) table.putInt(prefix);
+        for (int offset : nameOffsets) table.putInt(offset);
+        for (byte[] bytes : names) table.putShort((short) bytes.length).put(bytes);
+        return table.flip();
+    }
+
+    // Map the cached table if it was compiled from this exact registry file
+    private static ByteBuffer mapCache(long sourceSize, long sourceModified) {
+        try (FileChannel channel = FileChannel.open(CACHE, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) return null;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            boolean current = mapped.getInt(0) == MAGIC && mapped.getLong(8) == sourceSize && mapped.getLong(16) == sourceModified
+                && HEADER + (long) mapped.getInt(4) * 8 <= channel.size();
+            return current ? mapped : null; // The mapping stays valid after the channel closes
+        } catch (IOException e) {
+            return null; // No cache yet
+        }
+    }
+
+    // Best effort: without a writable home directory the table simply stays on the heap
+    private static void writeCache(ByteBuffer table) {
+        try {
+            Files.createDirectories(CACHE.getParent());
+            Path temporary = Files.createTempFile(CACHE.getParent(), "oui", ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    ByteBuffer contents = table.duplicate();
+                    while (contents.hasRemaining()) channel.write(contents);
+                }
+                Files.move(temporary, CACHE, StandardCopyOption.ATOMIC_MOVE); // Concurrent readers never see a partial file
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // Recompiled on the next start instead
+        }
+    }
+}
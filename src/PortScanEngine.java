@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Non-blocking TCP connect scanner: a handful of selector threads keep thousands of
+// connects in flight and expire them through a timer wheel instead of blocking sockets.
+// Ports found open by scanPorts keep their connection for a banner grab before closing;
+// ping uses the same loops to tell whether a host is up at all.
+public class PortScanEngine implements AutoCloseable {
+    private static final long TICK_MILLIS = 10; // Deadline resolution
+    private static final int WHEEL_SIZE = 512; // ~5 s per lap at 10 ms ticks
+
+    // Outcome of a single connect probe
+    enum PortState { OPEN, CLOSED, FILTERED }
+
+    // Callback invoked on a selector thread when a probe finishes; must not block
+    interface ProbeListener {
+        void onResult(InetSocketAddress target, PortState state, long rttNanos);
+    }
+
+    // Open ports of one host in ascending order, with the service identified on each and the
+    // HTTP response it gave (null where unknown or not HTTP)
+    record OpenPorts(int[] ports, String[] services, HttpResponseParser.Response[] http) {
+        static final OpenPorts NONE = new OpenPorts(new int[0], new String[0], new HttpResponseParser.Response[0]);
+    }
+
+    private final SelectorLoop[] loops;
+    private final ScanThrottle throttle; // Paces connects and bounds open sockets
+    private final RttEstimator rttEstimator;
+    private final BannerGrabber bannerGrabber; // Null closes open ports right away
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    public PortScanEngine(int selectorThreads, ScanThrottle throttle, RttEstimator rttEstimator, BannerGrabber bannerGrabber)
+            throws IOException {
+        loops = new SelectorLoop[selectorThreads];
+        this.throttle = throttle;
+        this.rttEstimator = rttEstimator;
+        this.bannerGrabber = bannerGrabber;
+        for (int i = 0; i < selectorThreads; i++) {
+            loops[i] = new SelectorLoop("port-scan-selector-" + i);
+            loops[i].start();
+        }
+    }
+
+    // Build an engine with its own throttle and RTT estimator from the scan configuration
+    static PortScanEngine create(ScanConfig config) throws IOException {
+        return new PortScanEngine(config.selectorThreads,
+            new ScanThrottle(config.ratePerSecond, config.maxInFlight),
+            new RttEstimator(config.minTimeoutMs, config.timeoutMs),
+            BannerGrabber.create(config));
+    }
+
+    // Rate limiter and in-flight cap shared with every other prober
+    ScanThrottle throttle() {
+        return throttle;
+    }
+
+    // Shared RTT estimates that drive per-host connect deadlines
+    RttEstimator rttEstimator() {
+        return rttEstimator;
+    }
+
+    // Banner grabbing applied to open ports, or null if disabled
+    BannerGrabber bannerGrabber() {
+        return bannerGrabber;
+    }
+
+    // Queue a connect probe; blocks the caller only while the throttle holds it back
+    void probe(InetSocketAddress target, int timeoutMs, ProbeListener listener) throws InterruptedException {
+        throttle.acquire();
+        Probe probe = new Probe(target, timeoutMs, listener, null);
+        nextLoop().submit(probe);
+    }
+
+    // Probe every port of a host concurrently; completes with the open ports in ascending order
+    // (ports must be sorted, e.g. from PortSet.toArray()). Deadlines start from the host's
+    // RTT estimate, and every refused or accepted connect tightens the deadlines of the
+    // host's probes still outstanding. Open ports are banner-grabbed on the same connection.
+    // A non-null source binds every probe to that local address.
+    CompletableFuture<OpenPorts> scanPorts(InetAddress host, int[] ports, InetAddress source) throws InterruptedException {
+        HostBatch batch = new HostBatch(host, ports, rttEstimator.timeoutFor(host));
+        if (ports.length == 0) {
+            batch.result.complete(OpenPorts.NONE);
+            return batch.result;
+        }
+        SelectorLoop loop = nextLoop(); // One loop owns the whole batch, so it can adjust deadlines
+        for (int i = 0; i < ports.length; i++) {
+            throttle.acquire(); // Paced here, on the caller, so selector threads never block
+            Probe probe = new Probe(new InetSocketAddress(host, ports[i]), batch.timeoutMs, null, batch);
+            probe.source = source;
+            loop.submit(probe);
+        }
+        return batch.result;
+    }
+
+    // TCP ping: connect to every port at once and complete with the round trip of the first
+    // answer, in nanoseconds, or -1 if none answers before the host's liveness deadline (the
+    // full timeout unless the host itself has answered before). A refused connect proves the
+    // host is up as well as an accepted one; the probes still outstanding are then dropped.
+    // Answers feed the host's RTT estimate.
+    CompletableFuture<Long> ping(InetAddress host, int[] ports, InetAddress source) throws InterruptedException {
+        PingBatch ping = new PingBatch(host, ports.length);
+        if (ports.length == 0) {
+            ping.result.complete(-1L);
+            return ping.result;
+        }
+        SelectorLoop loop = nextLoop(); // One loop owns all probes of the host, so the first answer can drop the rest
+        int timeoutMs = rttEstimator.livenessTimeoutFor(host);
+        for (int port : ports) {
+            throttle.acquire();
+            Probe probe = new Probe(new InetSocketAddress(host, port), timeoutMs, null, null);
+            probe.ping = ping;
+            probe.source = source;
+            loop.submit(probe);
+        }
+        return ping.result;
+    }
+
+    @Override
+    public void close() {
+        for (SelectorLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    private SelectorLoop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    // Port probes of one host; only touched by the selector loop that owns them
+    private static final class HostBatch {
+        final InetAddress host;
+        final int[] ports;
+        int[] open = new int[4]; // Open ports found so far; usually only a handful
+        String[] services = new String[4]; // Service identified on each open port
+        HttpResponseParser.Response[] http = new HttpResponseParser.Response[4];
+        int openCount;
+        final List<Probe> active = new ArrayList<>();
+        final CompletableFuture<OpenPorts> result = new CompletableFuture<>();
+        int timeoutMs; // Current deadline for this host, shrinks as samples arrive
+        int remaining;
+
+        HostBatch(InetAddress host, int[] ports, int timeoutMs) {
+            this.host = host;
+            this.ports = ports;
+            this.timeoutMs = timeoutMs;
+            this.remaining = ports.length;
+        }
+    }
+
+    // Ping probes of one host; only touched by the selector loop that owns them
+    private static final class PingBatch {
+        final InetAddress host;
+        final List<Probe> active = new ArrayList<>();
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        int remaining;
+
+        PingBatch(InetAddress host, int probes) {
+            this.host = host;
+            this.remaining = probes;
+        }
+    }
+
+    // State of one in-flight connect attempt, owned by a single selector loop
+    private static final class Probe {
+        final InetSocketAddress target;
+        final ProbeListener listener;
+        final HostBatch batch; // Set for probes started by scanPorts
+        PingBatch ping; // Set for probes started by ping
+        InetAddress source; // Local address to bind, null = any
+        int timeoutMs;
+        SocketChannel channel;
+        TimerWheel.Timeout<Probe> timeout;
+        long startNanos;
+        long rttNanos = -1; // Connect time, once connected
+        ByteBuffer banner; // Set while a banner is being read
+        boolean triggered; // Trigger request sent
+        boolean done;
+
+        Probe(InetSocketAddress target, int timeoutMs, ProbeListener listener, HostBatch batch) {
+            this.target = target;
+            this.timeoutMs = timeoutMs;
+            this.listener = listener;
+            this.batch = batch;
+        }
+    }
+
+    // One selector thread with its own registration queue and timer wheel
+    private final class SelectorLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Probe> pending = new ConcurrentLinkedQueue<>();
+        private final TimerWheel<Probe> wheel = new TimerWheel<>(TICK_MILLIS, WHEEL_SIZE);
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private volatile boolean running = true;
+
+        SelectorLoop(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void submit(Probe probe) {
+            pending.add(probe);
+            if (wakeupPending.compareAndSet(false, true)) { // Coalesce wakeups under load
+                selector.wakeup();
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(wheel.millisUntilNextTick(System.nanoTime()));
+                    wakeupPending.set(false);
+                    registerPending();
+                    processSelectedKeys();
+                    wheel.advance(System.nanoTime(), this::expired);
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // Selector failure ends the loop; outstanding probes are failed below
+            } finally {
+                failOutstanding();
+            }
+        }
+
+        private void registerPending() {
+            Probe probe;
+            while ((probe = pending.poll()) != null) {
+                probe.startNanos = System.nanoTime();
+                if (probe.batch != null) {
+                    probe.timeoutMs = probe.batch.timeoutMs; // Pick up any estimate learned meanwhile
+                    probe.batch.active.add(probe);
+                } else if (probe.ping != null) {
+                    if (probe.ping.result.isDone()) { // Host already answered on another port
+                        finish(probe, PortState.FILTERED);
+                        continue;
+                    }
+                    probe.ping.active.add(probe);
+                }
+                try {
+                    probe.channel = SocketChannel.open();
+                    probe.channel.configureBlocking(false);
+                    if (probe.source != null) {
+                        probe.channel.bind(new InetSocketAddress(probe.source, 0));
+                    }
+                    if (probe.channel.connect(probe.target)) { // Loopback may connect immediately
+                        connected(probe);
+                        continue;
+                    }
+                    probe.channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                    probe.timeout = wheel.schedule(probe, probe.startNanos + probe.timeoutMs * 1_000_000L);
+                } catch (IOException e) {
+                    finish(probe, classify(e));
+                }
+            }
+        }
+
+        private void processSelectedKeys() {
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Probe probe = (Probe) key.attachment();
+                try {
+                    if (!key.isValid()) continue;
+                    if (key.isConnectable() && probe.channel.finishConnect()) {
+                        connected(probe);
+                    } else if (key.isReadable()) {
+                        readBanner(probe);
+                    }
+                } catch (IOException e) {
+                    finish(probe, probe.rttNanos >= 0 ? PortState.OPEN : classify(e)); // Reset after connect: still open
+                }
+            }
+        }
+
+        // Connect succeeded: sample the RTT now, then grab a banner if this is a batch probe on a
+        // port the TLS engine does not handle
+        private void connected(Probe probe) throws IOException {
+            probe.rttNanos = System.nanoTime() - probe.startNanos;
+            if (probe.batch == null || bannerGrabber == null || bannerGrabber.skips(probe.target.getPort())) {
+                finish(probe, PortState.OPEN);
+                return;
+            }
+            sampleRtt(probe.batch, probe.rttNanos);
+            wheel.cancel(probe.timeout);
+            probe.banner = ByteBuffer.allocate(bannerGrabber.maxBytes(probe.target.getPort()));
+            SelectionKey key = probe.channel.keyFor(selector);
+            if (key == null) {
+                probe.channel.register(selector, SelectionKey.OP_READ, probe);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            int waitMs = bannerGrabber.passiveWaitMs(probe.target.getPort());
+            if (waitMs == 0) {
+                sendTrigger(probe);
+            } else {
+                probe.timeout = wheel.schedule(probe, System.nanoTime() + waitMs * 1_000_000L);
+            }
+        }
+
+        private void sendTrigger(Probe probe) {
+            probe.triggered = true;
+            try {
+                probe.channel.write(bannerGrabber.trigger(probe.target)); // A few bytes always fit an empty send buffer
+            } catch (IOException e) {
+                finish(probe, PortState.OPEN);
+                return;
+            }
+            probe.timeout = wheel.schedule(probe, System.nanoTime() + bannerGrabber.timeoutMs() * 1_000_000L);
+        }
+
+        // Keep reading until the buffer is full, the peer closes, or the line goes quiet
+        private void readBanner(Probe probe) throws IOException {
+            int read = probe.channel.read(probe.banner);
+            if (read < 0 || !probe.banner.hasRemaining()) {
+                finish(probe, PortState.OPEN);
+            } else if (read > 0) {
+                wheel.cancel(probe.timeout);
+                probe.timeout = wheel.schedule(probe, System.nanoTime() + BannerGrabber.IDLE_MILLIS * 1_000_000L);
+            }
+        }
+
+        private void expired(Probe probe) {
+            if (probe.banner == null) {
+                finish(probe, PortState.FILTERED); // Connect deadline
+            } else if (probe.banner.position() == 0 && !probe.triggered) {
+                sendTrigger(probe); // No server-first banner; ask for a reply instead
+            } else {
+                finish(probe, PortState.OPEN);
+            }
+        }
+
+        // Complete a probe exactly once: cancel its deadline, close the socket, notify
+        private void finish(Probe probe, PortState state) {
+            if (probe.done) return;
+            probe.done = true;
+            wheel.cancel(probe.timeout);
+            long rtt = probe.rttNanos >= 0 ? probe.rttNanos : System.nanoTime() - probe.startNanos;
+            closeQuietly(probe.channel);
+            throttle.release();
+            if (probe.batch != null) {
+                completeBatchProbe(probe, state, rtt);
+                return;
+            }
+            if (probe.ping != null) {
+                completePingProbe(probe, state, rtt);
+                return;
+            }
+            try {
+                probe.listener.onResult(probe.target, state, rtt);
+            } catch (RuntimeException ignored) {
+                // A faulty listener must not take down the selector loop
+            }
+        }
+
+        // Record a batch probe; an answer (open or refused) is an RTT sample that pulls in
+        // the deadlines of the host's remaining probes
+        private void completeBatchProbe(Probe probe, PortState state, long rttNanos) {
+            HostBatch batch = probe.batch;
+            batch.active.remove(probe);
+            if (state != PortState.FILTERED && probe.banner == null) { // Banner probes sampled on connect
+                sampleRtt(batch, rttNanos);
+            }
+            if (state == PortState.OPEN) {
+                if (batch.openCount == batch.open.length) {
+                    batch.open = Arrays.copyOf(batch.open, batch.openCount * 2);
+                    batch.services = Arrays.copyOf(batch.services, batch.openCount * 2);
+                    batch.http = Arrays.copyOf(batch.http, batch.openCount * 2);
+                }
+                batch.open[batch.openCount] = probe.target.getPort();
+                if (probe.banner != null) {
+                    probe.banner.flip();
+                    batch.services[batch.openCount] = bannerGrabber.identify(probe.banner);
+                    batch.http[batch.openCount] = bannerGrabber.http(probe.banner);
+                }
+                batch.openCount++;
+            }
+            if (--batch.remaining == 0) {
+                batch.result.complete(sortedOpenPorts(batch)); // Probes finish out of order
+            }
+        }
+
+        // The first answer completes the ping and drops the host's other probes
+        private void completePingProbe(Probe probe, PortState state, long rttNanos) {
+            PingBatch ping = probe.ping;
+            ping.active.remove(probe);
+            ping.remaining--;
+            if (state != PortState.FILTERED && !ping.result.isDone()) {
+                rttEstimator.sample(ping.host, rttNanos);
+                ping.result.complete(rttNanos);
+                for (Probe other : new ArrayList<>(ping.active)) {
+                    finish(other, PortState.FILTERED);
+                }
+            } else if (ping.remaining == 0) {
+                ping.result.complete(-1L); // No-op if an answer came first
+            }
+        }
+
+        // Feed an answer's RTT to the estimator and pull in the deadlines of the host's other probes
+        private void sampleRtt(HostBatch batch, long rttNanos) {
+            rttEstimator.sample(batch.host, rttNanos);
+            batch.timeoutMs = rttEstimator.timeoutFor(batch.host);
+            for (Probe other : batch.active) {
+                if (other.timeout != null && other.banner == null && batch.timeoutMs < other.timeoutMs) {
+                    other.timeoutMs = batch.timeoutMs;
+                    wheel.reschedule(other.timeout, other.startNanos + batch.timeoutMs * 1_000_000L);
+                }
+            }
+        }
+
+        private void failOutstanding() {
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                Probe probe = (Probe) key.attachment();
+                finish(probe, probe.rttNanos >= 0 ? PortState.OPEN : PortState.FILTERED);
+            }
+            Probe probe;
+            while ((probe = pending.poll()) != null) {
+                finish(probe, PortState.FILTERED);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    // Open ports sorted together with their services. Runs on the selector thread, and a
+    // full-range scan of a host that filters nothing opens tens of thousands of ports, so
+    // the port and its original position are packed into longs and sorted as primitives.
+    private static OpenPorts sortedOpenPorts(HostBatch batch) {
+        int count = batch.openCount;
+        long[] order = new long[count]; // Port in the high half, index into the batch in the low
+        for (int i = 0; i < count; i++) {
+            order[i] = (long) batch.open[i] << 32 | i;
+        }
+        Arrays.sort(order);
+        int[] ports = new int[count];
+        String[] services = new String[count];
+        HttpResponseParser.Response[] http = new HttpResponseParser.Response[count];
+        for (int i = 0; i < count; i++) {
+            int from = (int) order[i];
+            ports[i] = batch.open[from];
+            services[i] = batch.services[from];
+            http[i] = batch.http[from];
+        }
+        return new OpenPorts(ports, services, http);
+    }
+
+    // A refused connect (RST) proves the port is closed; anything else is treated as filtered
+    private static PortState classify(IOException e) {
+        if (e instanceof ConnectException) {
+            String message = e.getMessage();
+            if (message == null || message.contains("refused")) {
+                return PortState.CLOSED;
+            }
+        }
+        return PortState.FILTERED;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do if close fails
+        }
+    }
+}
@@ -0,0 +1,27 @@
+// Receives scan results as soon as they are known, in completion order rather than
+// submission order. Called from pipeline and selector threads, so implementations must
+// be thread-safe and should hand work off instead of blocking.
+interface ResultSink {
+    // Live host confirmed by discovery; enrichment is still running
+    default void hostDiscovered(DeviceInfo device) {
+    }
+
+    // Host fully scanned and enriched; when monitoring, a host that was not known to be up
+    void hostCompleted(DeviceInfo device);
+
+    // Monitoring: a known host answered with different ports, services, name or MAC
+    default void hostChanged(DeviceInfo device, DeviceInfo previous) {
+        hostCompleted(device);
+    }
+
+    // Monitoring: a known host stopped answering; device is the last state seen
+    default void hostLost(DeviceInfo device) {
+    }
+
+    // Number of targets finished (alive or not) out of the total
+    default void progress(long done, long total) {
+    }
+
+    default void log(String message) {
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Bounded, TTL-aware cache in front of a ReverseResolver. Failed lookups are cached too
+// (negative caching), so rescanning a subnet does not repeat PTR queries that are known to
+// fail. Concurrent lookups of the same address share one query.
+final class ReverseDnsCache implements AutoCloseable {
+    private final ReverseResolver resolver;
+    private final int maxEntries;
+    private final long positiveTtlNanos; // Used when the backend reports no TTL, and as an upper bound
+    private final long negativeTtlNanos;
+    private final Map<Integer, Entry> entries; // Access-ordered for LRU eviction, guarded by this
+    private final Map<Integer, CompletableFuture<String>> inFlight = new HashMap<>(); // Guarded by this
+    private long hits, misses;
+
+    // A cached answer; name is null for a negative entry
+    private record Entry(String name, long expiresAtNanos) {
+    }
+
+    ReverseDnsCache(ReverseResolver resolver, int maxEntries, long positiveTtlSeconds, long negativeTtlSeconds) {
+        this.resolver = resolver;
+        this.maxEntries = maxEntries;
+        this.positiveTtlNanos = TimeUnit.SECONDS.toNanos(positiveTtlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > ReverseDnsCache.this.maxEntries;
+            }
+        };
+    }
+
+    // Hostname for the address, or null if it has none; completes immediately on a cache hit
+    CompletableFuture<String> lookup(int address) {
+        CompletableFuture<String> query;
+        synchronized (this) {
+            Entry entry = entries.get(address);
+            if (entry != null && entry.expiresAtNanos - System.nanoTime() > 0) {
+                hits++;
+                return CompletableFuture.completedFuture(entry.name);
+            }
+            CompletableFuture<String> pending = inFlight.get(address);
+            if (pending != null) {
+                hits++;
+                return pending;
+            }
+            misses++;
+            query = new CompletableFuture<>();
+            inFlight.put(address, query);
+        }
+        resolver.resolve(address).whenComplete((answer, error) -> {
+            String name = answer != null ? answer.name() : null;
+            long ttlNanos;
+            if (name == null) {
+                ttlNanos = negativeTtlNanos; // NXDOMAIN, no PTR, timeout or failure
+            } else if (answer.ttlSeconds() >= 0) {
+                ttlNanos = Math.min(positiveTtlNanos, TimeUnit.SECONDS.toNanos(answer.ttlSeconds()));
+            } else {
+                ttlNanos = positiveTtlNanos;
+            }
+            synchronized (this) {
+                inFlight.remove(address);
+                if (ttlNanos > 0) {
+                    entries.put(address, new Entry(name, System.nanoTime() + ttlNanos));
+                }
+            }
+            query.complete(name);
+        });
+        return query;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    // "hits/lookups" summary for scan logs
+    synchronized String stats() {
+        return hits + " cached of " + (hits + misses) + " lookups, " + entries.size() + " entries";
+    }
+
+    @Override
+    public void close() {
+        resolver.close();
+    }
+}
@@ -0,0 +1,18 @@
+import java.util.concurrent.CompletableFuture;
+
+// Backend that answers PTR lookups for int-encoded IPv4 addresses. Lookups never block the
+// caller; a missing name completes with an answer whose name is null.
+interface ReverseResolver extends AutoCloseable {
+    // Outcome of one PTR lookup; ttlSeconds is -1 when the backend does not report TTLs
+    record Answer(String name, long ttlSeconds) {
+        static Answer negative(long ttlSeconds) {
+            return new Answer(null, ttlSeconds);
+        }
+    }
+
+    CompletableFuture<Answer> resolve(int address);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,119 @@
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+// TCP-style (RFC 6298) smoothed round-trip estimates per host and per /24 subnet. A host's
+// connect deadline is SRTT + 4 * RTTVAR, clamped to [minTimeout, maxTimeout]; hosts without
+// samples of their own borrow their subnet's estimate, and unknown subnets get maxTimeout.
+// IPv6 hosts are kept apart, keyed by their full address, with their /64 as the subnet.
+final class RttEstimator {
+    private static final double ALPHA = 1.0 / 8; // SRTT gain
+    private static final double BETA = 1.0 / 4; // RTTVAR gain
+    private static final int K = 4;
+
+    private final int minTimeoutMs;
+    private final int maxTimeoutMs;
+    private final ConcurrentHashMap<Integer, Estimate> hosts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Estimate> subnets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Ipv6Host, Estimate> ipv6Hosts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Estimate> ipv6Subnets = new ConcurrentHashMap<>(); // By /64 prefix
+
+    private record Ipv6Host(long high, long low) {
+    }
+
+    RttEstimator(int minTimeoutMs, int maxTimeoutMs) {
+        this.minTimeoutMs = minTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+    }
+
+    // Record a measured round trip (a completed or refused connect, or an echo reply)
+    void sample(int address, long rttNanos) {
+        double rttMillis = rttNanos / 1_000_000.0;
+        hosts.computeIfAbsent(address, k -> new Estimate()).update(rttMillis);
+        subnets.computeIfAbsent(address >>> 8, k -> new Estimate()).update(rttMillis);
+    }
+
+    // Same for an IPv4 or IPv6 host
+    void sample(InetAddress host, long rttNanos) {
+        byte[] bytes = host.getAddress();
+        if (bytes.length == 4) {
+            sample(ByteBuffer.wrap(bytes).getInt(), rttNanos);
+            return;
+        }
+        double rttMillis = rttNanos / 1_000_000.0;
+        long high = Ipv6Address.high(bytes);
+        ipv6Hosts.computeIfAbsent(new Ipv6Host(high, Ipv6Address.low(bytes)), k -> new Estimate()).update(rttMillis);
+        ipv6Subnets.computeIfAbsent(high, k -> new Estimate()).update(rttMillis);
+    }
+
+    // Connect deadline for the next probe to this host
+    int timeoutFor(int address) {
+        Estimate estimate = hosts.get(address);
+        if (estimate == null) estimate = subnets.get(address >>> 8);
+        return estimate == null ? maxTimeoutMs : estimate.timeout(minTimeoutMs, maxTimeoutMs);
+    }
+
+    int timeoutFor(InetAddress host) {
+        byte[] bytes = host.getAddress();
+        if (bytes.length == 4) return timeoutFor(ByteBuffer.wrap(bytes).getInt());
+        long high = Ipv6Address.high(bytes);
+        Estimate estimate = ipv6Hosts.get(new Ipv6Host(high, Ipv6Address.low(bytes)));
+        if (estimate == null) estimate = ipv6Subnets.get(high);
+        return estimate == null ? maxTimeoutMs : estimate.timeout(minTimeoutMs, maxTimeoutMs);
+    }
+
+    // Deadline for a liveness probe (TCP ping, ICMP echo): RTT-derived only once the host itself
+    // has answered. A quiet host is not held to its subnet's estimate, since a Wi-Fi client in
+    // power save or a loaded box may answer far slower than its wired neighbours, and a
+    // liveness probe gets no retransmit.
+    int livenessTimeoutFor(int address) {
+        Estimate estimate = hosts.get(address);
+        return estimate == null ? maxTimeoutMs : estimate.timeout(minTimeoutMs, maxTimeoutMs);
+    }
+
+    int livenessTimeoutFor(InetAddress host) {
+        byte[] bytes = host.getAddress();
+        if (bytes.length == 4) return livenessTimeoutFor(ByteBuffer.wrap(bytes).getInt());
+        Estimate estimate = ipv6Hosts.get(new Ipv6Host(Ipv6Address.high(bytes), Ipv6Address.low(bytes)));
+        return estimate == null ? maxTimeoutMs : estimate.timeout(minTimeoutMs, maxTimeoutMs);
+    }
+
+    // Smoothed RTT in milliseconds, or -1 if the host has never answered
+    double smoothedRtt(int address) {
+        Estimate estimate = hosts.get(address);
+        return estimate == null ? -1 : estimate.srtt();
+    }
+
+    // Forget per-host state at the end of a scan; subnet estimates are kept as a warm start.
+    // Monitoring keeps its host estimates, which are bounded by the hosts it watches.
+    void clearHosts() {
+        hosts.clear();
+        ipv6Hosts.clear();
+    }
+
+    private static final class Estimate {
+        private double srtt;
+        private double rttvar;
+        private boolean initialized;
+
+        synchronized void update(double rtt) {
+            if (!initialized) {
+                srtt = rtt;
+                rttvar = rtt / 2;
+                initialized = true;
+                return;
+            }
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+        }
+
+        synchronized double srtt() {
+            return srtt;
+        }
+
+        synchronized int timeout(int min, int max) {
+            double rto = srtt + K * rttvar;
+            return (int) Math.max(min, Math.min(max, Math.ceil(rto)));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Tunable scan settings; defaults match the original behaviour and can be overridden with
+// -Dznet.* system properties (e.g. -Dznet.executor=virtual -Dznet.maxConcurrency=1024)
+final class ScanConfig {
+    static final int DEFAULT_MAX_CONCURRENCY = 255;
+
+    int selectorThreads = 2; // Selector loops shared by all port probes
+    ScanExecutor.Mode executionMode = ScanExecutor.Mode.PLATFORM;
+    int maxConcurrency = DEFAULT_MAX_CONCURRENCY; // Hosts in discovery at once
+    int portParallelism = 64; // Hosts having their port probes queued at once
+    int dnsParallelism = 32; // Concurrent reverse DNS lookups
+    int macParallelism = 4; // Concurrent MAC lookups
+    String nameserver; // "host[:port]" for PTR queries; null uses the first resolv.conf nameserver
+    boolean systemResolver; // Resolve through InetAddress instead of the built-in UDP client
+    int dnsTimeoutMs = 800; // Per-attempt PTR query timeout
+    int dnsRetries = 2; // Resends after a timeout
+    int dnsMaxInFlight = 256; // PTR queries outstanding at once
+    int dnsCacheSize = 65_536; // Reverse-DNS answers kept across scans
+    long dnsPositiveTtlSeconds = 3600; // Upper bound for caching a hostname
+    long dnsNegativeTtlSeconds = 300; // How long a failed lookup is remembered
+    int neighborRefreshMs = 500; // Minimum gap between neighbor-table re-reads on a MAC miss
+    String ouiFile; // IEEE registry (oui.txt, oui.csv or nmap-mac-prefixes); null looks in the usual system paths
+    HostScanPipeline.Discovery discovery = HostScanPipeline.Discovery.TCP; // How the discovery stage decides a host is up
+    PortSet pingPorts = PortSet.parse(PortSet.PING_DEFAULT_SPEC); // Ports a TCP ping connects to; a refusal on any of them counts
+    int timeoutMs = 1000; // Reachability timeout, and the connect deadline before any RTT is known
+    int minTimeoutMs = 30; // Floor for RTT-derived connect deadlines
+    double ratePerSecond = 0; // New connection attempts per second across the whole scan, 0 = unlimited
+    int maxInFlight = 768; // Outstanding probes across the whole scan; stays below the common 1024 fd limit
+    int hostWindow = 1024; // Hosts admitted into the pipeline, and the capacity of each stage queue
+    PortSet ports = PortSet.parse(PortSet.DEFAULT_SPEC); // TCP ports probed on every live host
+    PortSet udpPorts = PortSet.parse(PortSet.UDP_DEFAULT_SPEC); // UDP services probed on every live host; null = none
+    int udpRetries = 1; // Resends of an unanswered UDP probe, each after timeoutMs
+    boolean banners = true; // Read a banner from every open TCP port to identify its service
+    int bannerWaitMs = 300; // Listening for a server-first banner before sending a trigger request
+    int bannerTimeoutMs = 1000; // Waiting for a reply to the trigger request
+    int bannerBytes = 1024; // Most bytes read from one port
+    int httpBytes = 16_384; // Most bytes read from an HTTP port, enough to reach the <title> of most pages
+    PortSet tlsPorts = PortSet.parse(PortSet.TLS_DEFAULT_SPEC); // Open TCP ports whose certificate is fetched; null = none
+    int tlsTimeoutMs = 3000; // Connect plus handshake, up to the server certificate
+    int tlsMaxInFlight = 128; // TLS handshakes outstanding at once
+    String targets; // CIDR blocks, ranges and addresses; null scans the network of every interface
+    String interfaces; // Interface names to scan when no targets are given; null = all up, non-loopback ones
+    int minPrefix = 16; // Interface networks wider than this are narrowed to the block around the interface address
+    String exclude; // Addresses or ranges to leave out
+    boolean ipv6 = true; // Also discover and scan the IPv6 hosts on the link of every scanned interface
+    int ipv6WaitMs = 2000; // How long IPv6 discovery collects echo and mDNS replies
+    int monitorLiveMs = 60_000; // Monitoring: interval between rechecks of a host that is up
+    int monitorSweepMs = 900_000; // Monitoring: interval between sweeps of the addresses not known to be up
+    double monitorJitter = 0.2; // Monitoring: intervals vary by up to this fraction either way
+    String historyDir = Path.of(System.getProperty("user.home"), ".znet", "history").toString(); // Scan history segments; null = no history
+    int historyDays = 180; // History segments older than this are deleted, 0 = keep everything
+
+    // Build a configuration from system properties, falling back to defaults
+    static ScanConfig fromSystemProperties() {
+        ScanConfig config = new ScanConfig();
+        String executor = System.getProperty("znet.executor");
+        if (executor != null) {
+            config.executionMode = ScanExecutor.Mode.valueOf(executor.trim().toUpperCase());
+        }
+        config.maxConcurrency = positive("znet.maxConcurrency", config.maxConcurrency);
+        config.portParallelism = positive("znet.portThreads", config.portParallelism);
+        config.dnsParallelism = positive("znet.dnsThreads", config.dnsParallelism);
+        config.macParallelism = positive("znet.macThreads", config.macParallelism);
+        config.hostWindow = positive("znet.hostWindow", config.hostWindow);
+        config.nameserver = System.getProperty("znet.nameserver");
+        config.systemResolver = "system".equalsIgnoreCase(System.getProperty("znet.resolver"));
+        config.dnsTimeoutMs = positive("znet.dnsTimeout", config.dnsTimeoutMs);
+        config.dnsRetries = Integer.getInteger("znet.dnsRetries", config.dnsRetries);
+        config.dnsMaxInFlight = positive("znet.dnsMaxInFlight", config.dnsMaxInFlight);
+        if (config.dnsMaxInFlight > DnsPtrResolver.MAX_IN_FLIGHT) {
+            throw new IllegalArgumentException("znet.dnsMaxInFlight must be at most " + DnsPtrResolver.MAX_IN_FLIGHT);
+        }
+        config.dnsCacheSize = positive("znet.dnsCacheSize", config.dnsCacheSize);
+        config.dnsPositiveTtlSeconds = Long.getLong("znet.dnsTtl", config.dnsPositiveTtlSeconds);
+        config.dnsNegativeTtlSeconds = Long.getLong("znet.dnsNegativeTtl", config.dnsNegativeTtlSeconds);
+        config.neighborRefreshMs = positive("znet.neighborRefresh", config.neighborRefreshMs);
+        config.ouiFile = System.getProperty("znet.ouiFile");
+        config.ratePerSecond = Double.parseDouble(System.getProperty("znet.rate", String.valueOf(config.ratePerSecond)));
+        config.maxInFlight = positive("znet.maxInFlight", config.maxInFlight);
+        String discovery = System.getProperty("znet.discovery");
+        if (discovery != null) {
+            config.discovery = HostScanPipeline.Discovery.valueOf(discovery.trim().toUpperCase());
+        }
+        config.pingPorts = PortSet.parse(System.getProperty("znet.pingPorts", PortSet.PING_DEFAULT_SPEC));
+        config.timeoutMs = positive("znet.timeout", config.timeoutMs);
+        config.minTimeoutMs = Math.min(positive("znet.minTimeout", config.minTimeoutMs), config.timeoutMs);
+        config.ports = PortSet.parse(System.getProperty("znet.ports", PortSet.DEFAULT_SPEC));
+        config.udpPorts = parseOptionalPorts(System.getProperty("znet.udpPorts", PortSet.UDP_DEFAULT_SPEC));
+        config.udpRetries = Integer.getInteger("znet.udpRetries", config.udpRetries);
+        config.banners = Boolean.parseBoolean(System.getProperty("znet.banners", String.valueOf(config.banners)));
+        config.bannerWaitMs = positive("znet.bannerWait", config.bannerWaitMs);
+        config.bannerTimeoutMs = positive("znet.bannerTimeout", config.bannerTimeoutMs);
+        config.bannerBytes = positive("znet.bannerBytes", config.bannerBytes);
+        config.httpBytes = positive("znet.httpBytes", config.httpBytes);
+        config.tlsPorts = parseOptionalPorts(System.getProperty("znet.tlsPorts", PortSet.TLS_DEFAULT_SPEC));
+        config.tlsTimeoutMs = positive("znet.tlsTimeout", config.tlsTimeoutMs);
+        config.tlsMaxInFlight = positive("znet.tlsMaxInFlight", config.tlsMaxInFlight);
+        config.targets = System.getProperty("znet.targets");
+        config.interfaces = System.getProperty("znet.interfaces");
+        config.minPrefix = Integer.getInteger("znet.minPrefix", config.minPrefix);
+        if (config.minPrefix < 0 || config.minPrefix > 32) {
+            throw new IllegalArgumentException("znet.minPrefix must be between 0 and 32");
+        }
+        config.exclude = System.getProperty("znet.exclude");
+        config.ipv6 = Boolean.parseBoolean(System.getProperty("znet.ipv6", String.valueOf(config.ipv6)));
+        config.ipv6WaitMs = positive("znet.ipv6Wait", config.ipv6WaitMs);
+        config.monitorLiveMs = positive("znet.monitorLive", config.monitorLiveMs);
+        config.monitorSweepMs = positive("znet.monitorSweep", config.monitorSweepMs);
+        config.monitorJitter = Double.parseDouble(System.getProperty("znet.monitorJitter", String.valueOf(config.monitorJitter)));
+        if (config.monitorJitter < 0 || config.monitorJitter >= 1) {
+            throw new IllegalArgumentException("znet.monitorJitter must be at least 0 and below 1");
+        }
+        String history = System.getProperty("znet.history", config.historyDir);
+        config.historyDir = history.trim().equalsIgnoreCase("none") ? null : history;
+        config.historyDays = Integer.getInteger("znet.historyDays", config.historyDays);
+        return config;
+    }
+
+    // What to scan: the configured targets if set, otherwise the network of every up,
+    // non-loopback interface, each scanned through its own interface
+    List<ScanSession.Scope> resolveScopes(Consumer<String> log) throws SocketException {
+        if (targets != null && !targets.isBlank()) {
+            return List.of(new ScanSession.Scope(TargetSpec.parse(targets, exclude), null));
+        }
+        Set<String> names = interfaces == null || interfaces.isBlank() ? Set.of() : Set.copyOf(Arrays.asList(interfaces.trim().split("[,\\s]+")));
+        List<ScanSession.Scope> scopes = new ArrayList<>();
+        for (LocalInterface local : LocalInterface.enumerate(names, minPrefix)) {
+            log.accept("Interface: " + local.label());
+            scopes.add(new ScanSession.Scope(TargetSpec.parse(local.network(minPrefix), exclude), local));
+        }
+        if (scopes.isEmpty()) {
+            throw new SocketException("No network interface found");
+        }
+        return scopes;
+    }
+
+    // A port spec, or "none" to skip that kind of probe
+    static PortSet parseOptionalPorts(String spec) {
+        return spec.trim().equalsIgnoreCase("none") ? null : PortSet.parse(spec);
+    }
+
+    private static int positive(String property, int defaultValue) {
+        int value = Integer.getInteger(property, defaultValue);
+        if (value < 1) {
+            throw new IllegalArgumentException(property + " must be positive");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Long-lived scan machinery shared by every scan of one GUI or CLI process: the TCP and UDP
+// port engines (sharing one throttle), the TLS handshake engine, the ICMP echo engine when
+// configured, the RTT estimates, the reverse-DNS cache, the neighbor table and the MAC vendor
+// index, and the scan history. Keeping them across scans lets repeated scans reuse what
+// earlier ones learned.
+final class ScanContext implements AutoCloseable {
+    final ScanConfig config;
+    final PortScanEngine portScanEngine;
+    final UdpProbeEngine udpProbeEngine;
+    final TlsHandshakeEngine tlsEngine;
+    final IcmpEchoEngine icmpEngine; // Null unless ICMP discovery is configured and a socket could be opened
+    final String icmpUnavailable; // Why icmpEngine is null although ICMP discovery is configured
+    final ReverseDnsCache reverseDns;
+    final NeighborTable neighbors;
+    final OuiIndex ouiIndex;
+    final ScanHistory history; // Null when disabled or when its directory cannot be opened
+    final String historyUnavailable; // Why history is null although a directory is configured
+
+    private ScanContext(ScanConfig config, PortScanEngine portScanEngine, UdpProbeEngine udpProbeEngine,
+                        TlsHandshakeEngine tlsEngine, IcmpEchoEngine icmpEngine, String icmpUnavailable,
+                        ReverseDnsCache reverseDns, NeighborTable neighbors, OuiIndex ouiIndex,
+                        ScanHistory history, String historyUnavailable) {
+        this.config = config;
+        this.portScanEngine = portScanEngine;
+        this.udpProbeEngine = udpProbeEngine;
+        this.tlsEngine = tlsEngine;
+        this.icmpEngine = icmpEngine;
+        this.icmpUnavailable = icmpUnavailable;
+        this.reverseDns = reverseDns;
+        this.neighbors = neighbors;
+        this.ouiIndex = ouiIndex;
+        this.history = history;
+        this.historyUnavailable = historyUnavailable;
+    }
+
+    static ScanContext create(ScanConfig config) throws IOException {
+        PortScanEngine portScanEngine = PortScanEngine.create(config);
+        IcmpEchoEngine icmpEngine = null;
+        String icmpUnavailable = null;
+        if (config.discovery == HostScanPipeline.Discovery.ICMP) {
+            try {
+                icmpEngine = IcmpEchoEngine.open(portScanEngine.throttle(), portScanEngine.rttEstimator());
+            } catch (IOException e) {
+                icmpUnavailable = e.getMessage();
+            } catch (UnsupportedClassVersionError e) {
+                icmpUnavailable = "the Foreign Function & Memory API needs --enable-preview on JDK 21";
+            }
+        }
+        ScanHistory history = null;
+        String historyUnavailable = null;
+        if (config.historyDir != null) {
+            try {
+                history = ScanHistory.open(Path.of(config.historyDir), ScanHistory.SEGMENT_BYTES, config.historyDays);
+            } catch (IOException e) {
+                historyUnavailable = e.getMessage(); // Scanning works without it
+            }
+        }
+        return new ScanContext(config, portScanEngine, new UdpProbeEngine(portScanEngine.throttle(), config.timeoutMs, config.udpRetries),
+            new TlsHandshakeEngine(portScanEngine.throttle(), config.tlsTimeoutMs, config.tlsMaxInFlight), icmpEngine, icmpUnavailable,
+            new ReverseDnsCache(createResolver(config), config.dnsCacheSize, config.dnsPositiveTtlSeconds, config.dnsNegativeTtlSeconds),
+            new NeighborTable(config.neighborRefreshMs), OuiIndex.load(config.ouiFile), history, historyUnavailable);
+    }
+
+    // Built-in UDP PTR client against the configured or resolv.conf nameserver; the system
+    // resolver when asked for, or when no nameserver can be found
+    private static ReverseResolver createResolver(ScanConfig config) throws IOException {
+        String nameserver = config.nameserver != null ? config.nameserver : DnsPtrResolver.systemNameserver();
+        if (config.systemResolver || nameserver == null) {
+            return new SystemReverseResolver(config.dnsParallelism);
+        }
+        return new DnsPtrResolver(nameserver, config.dnsTimeoutMs, config.dnsRetries, config.dnsMaxInFlight);
+    }
+
+    @Override
+    public void close() {
+        portScanEngine.close();
+        udpProbeEngine.close();
+        tlsEngine.close();
+        if (icmpEngine != null) {
+            icmpEngine.close();
+        }
+        reverseDns.close();
+        if (history != null) {
+            history.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Runs host scans either on a fixed pool of platform threads or on one virtual thread per
+// task. A semaphore caps how many tasks run at once, and cancel() stops them as a unit.
+final class ScanExecutor implements AutoCloseable {
+    // How scan tasks are mapped onto threads
+    enum Mode { PLATFORM, VIRTUAL }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Set<Future<?>> outstanding = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    private ScanExecutor(Mode mode, ExecutorService executor, int maxConcurrency) {
+        this.mode = mode;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    // Create an executor for the given mode; maxConcurrency bounds concurrently running tasks
+    static ScanExecutor create(Mode mode, int maxConcurrency) {
+        ExecutorService executor = mode == Mode.VIRTUAL
+            ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("scan-", 0).factory())
+            : Executors.newFixedThreadPool(maxConcurrency);
+        return new ScanExecutor(mode, executor, maxConcurrency);
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    // Submit a capped task; blocks the caller while maxConcurrency tasks are outstanding
+    <T> Future<T> submit(Callable<T> task) throws InterruptedException {
+        permits.acquire();
+        try {
+            return start(new TrackedTask<>(task, true));
+        } catch (RuntimeException e) {
+            permits.release(); // Rejected after shutdown
+            throw e;
+        }
+    }
+
+    // Open a scope for child tasks of one scan task (e.g. its port probes)
+    TaskScope openScope() {
+        return new TaskScope();
+    }
+
+    // Cancel every outstanding task and child task, interrupting running ones
+    void cancel() {
+        cancelled = true;
+        for (Future<?> future : outstanding) {
+            future.cancel(true);
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Wait for outstanding tasks to finish; an interrupted caller cancels them instead
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (cancelled) executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> Future<T> start(TrackedTask<T> task) {
+        if (cancelled) {
+            task.cancel(false);
+            return task;
+        }
+        outstanding.add(task);
+        executor.execute(task);
+        return task;
+    }
+
+    // Future that releases its permit and untracks itself however it ends, including cancellation
+    private final class TrackedTask<T> extends FutureTask<T> {
+        private final boolean holdsPermit;
+
+        TrackedTask(Callable<T> callable, boolean holdsPermit) {
+            super(callable);
+            this.holdsPermit = holdsPermit;
+        }
+
+        @Override
+        protected void done() {
+            outstanding.remove(this);
+            if (holdsPermit) permits.release();
+        }
+    }
+
+    // Child tasks forked by one scan task; closing the scope cancels any that are still running,
+    // so a cancelled or failed parent never leaves orphaned probes behind
+    final class TaskScope implements AutoCloseable {
+        private final List<Future<?>> children = new ArrayList<>();
+
+        // Fork a child on its own thread; children are not counted against maxConcurrency
+        <T> Future<T> fork(Callable<T> task) {
+            Future<T> child = start(new TrackedTask<>(task, false));
+            children.add(child);
+            return child;
+        }
+
+        // Wait for every forked child to complete
+        void join() throws InterruptedException {
+            for (Future<?> child : children) {
+                try {
+                    child.get();
+                } catch (ExecutionException | CancellationException ignored) {
+                    // Failures are reported through the child's own future
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Future<?> child : children) {
+                child.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,566 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Scan results kept across runs: every device a scan completes (and every monitoring event)
+// is appended as a compact binary record to a memory-mapped segment file. A full segment is
+// sealed with an index file holding its record offsets in time order and its records sorted
+// by address, so the history of one host is a binary search per segment and a time range a
+// binary search in the few segments that overlap it. Only the open segment is indexed in
+// memory. Segments older than the retention period are deleted when the history is opened.
+// One process at a time may open a history directory for writing; queries can open it
+// read-only next to that writer and see the records committed when they opened it.
+//
+// Segment: header (magic, unused, creation time, committed end), then records of
+// length, time, event, flags, IPv4 address or Ipv6Address.key(), [IPv6 high, low], MAC,
+// RTT in microseconds, interface, hostname, vendor, TCP ports with services, UDP ports. Strings are a
+// short length (-1 = null) and UTF-8 bytes.
+// Index: header (magic, record count, first time, last time), record offsets in time order,
+// then (address, record number) pairs sorted by address and record number.
+final class ScanHistory implements AutoCloseable {
+    static final String[] EVENTS = {"seen", "up", "changed", "down"}; // Scan result, then monitoring events
+    static final int SEEN = 0, UP = 1, CHANGED = 2, DOWN = 3;
+    static final int SEGMENT_BYTES = 64 << 20; // About a million records
+
+    private static final int SEGMENT_MAGIC = 0x5A485331; // "ZHS1"
+    private static final int INDEX_MAGIC = 0x5A484931; // "ZHI1"
+    private static final int SEGMENT_HEADER = 24;
+    private static final int INDEX_HEADER = 24;
+    private static final int FLAG_IPV6 = 1;
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    // One recorded state of a host; hostname, vendor and interface are null if unknown, mac is
+    // NeighborTable.UNKNOWN and rttMillis -1 when not known
+    record Snapshot(long timeMillis, int event, String ip, String localInterface, String hostname, long mac, String vendor,
+                    double rttMillis, int[] ports, String[] services, int[] udpPorts) {
+        String eventName() {
+            return EVENTS[event];
+        }
+
+        boolean hasPort(int port) {
+            return Arrays.binarySearch(ports, port) >= 0;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private FileLock lock; // Held while open for writing
+    private final List<Segment> sealed = new ArrayList<>(); // Oldest first
+    private Segment active; // Null when open read-only
+    private int[] activeOffsets = new int[1024]; // Records of the active segment in time order
+    private int[] activeAddresses = new int[1024]; // And their addresses
+    private int activeCount;
+
+    private ScanHistory(Path directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    // Open (or create) the history in directory, deleting sealed segments whose newest record
+    // is older than retentionDays (0 keeps everything)
+    static ScanHistory open(Path directory, int segmentBytes, int retentionDays) throws IOException {
+        Files.createDirectories(directory);
+        ScanHistory history = new ScanHistory(directory, segmentBytes);
+        FileChannel lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            history.lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Already open in this process
+        }
+        if (history.lock == null) {
+            lockChannel.close();
+            throw new IOException("Scan history " + directory + " is already open");
+        }
+        try {
+            history.load(retentionDays);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        return history;
+    }
+
+    // Open the history in directory for queries only: nothing is created, locked, sealed or
+    // deleted, and segments still being written are indexed in memory up to their committed end
+    static ScanHistory openReadOnly(Path directory) throws IOException {
+        ScanHistory history = new ScanHistory(directory, 0);
+        if (!Files.isDirectory(directory)) return history; // Nothing recorded yet
+        for (Path log : segments(directory)) {
+            Segment segment = Segment.map(log, number(log), false);
+            if (Files.exists(indexPath(log))) {
+                segment.loadIndex();
+            } else {
+                segment.useIndex(buildIndex(segment, scanOffsets(segment)));
+            }
+            history.sealed.add(segment);
+        }
+        return history;
+    }
+
+    // Map the existing segments, indexing an unsealed one left by a crash
+    private void load(int retentionDays) throws IOException {
+        List<Path> segments = segments(directory);
+        long cutoff = retentionDays > 0 ? System.currentTimeMillis() - retentionDays * DAY_MILLIS : Long.MIN_VALUE;
+        for (int i = 0; i < segments.size(); i++) {
+            Path log = segments.get(i);
+            Segment segment = Segment.map(log, number(log), true);
+            if (i == segments.size() - 1 && !Files.exists(indexPath(log))) {
+                active = segment; // Still being appended to
+                rebuildActiveIndex();
+                break;
+            }
+            if (!Files.exists(indexPath(log))) {
+                seal(segment, scanOffsets(segment)); // Closed without its index
+            }
+            segment.loadIndex();
+            if (segment.lastTime < cutoff) {
+                Files.deleteIfExists(indexPath(log));
+                Files.deleteIfExists(log);
+                continue;
+            }
+            sealed.add(segment);
+        }
+        if (active == null) {
+            long next = segments.isEmpty() ? 1 : number(segments.get(segments.size() - 1)) + 1;
+            active = Segment.create(directory.resolve("segment-" + next + ".log"), next, segmentBytes);
+        }
+    }
+
+    // Append the current state of a device with one of the event codes
+    synchronized void append(DeviceInfo device, int event) throws IOException {
+        if (active == null) {
+            throw new IllegalStateException("Scan history " + directory + " is open read-only");
+        }
+        byte[] record = encode(device, event, System.currentTimeMillis());
+        if (active.end + record.length > active.buffer.capacity()) {
+            roll(record.length);
+        }
+        int offset = (int) active.end;
+        active.buffer.put(offset, record);
+        active.end += record.length;
+        active.buffer.putLong(16, active.end); // Committed: a crash before this leaves the record out
+        if (activeCount == activeOffsets.length) {
+            activeOffsets = Arrays.copyOf(activeOffsets, activeCount * 2);
+            activeAddresses = Arrays.copyOf(activeAddresses, activeCount * 2);
+        }
+        activeOffsets[activeCount] = offset;
+        activeAddresses[activeCount++] = device.ip();
+    }
+
+    // A sink that records every result and event before passing it on; completed hosts are
+    // recorded as SEEN for a scan and UP when monitoring
+    ResultSink recording(ResultSink sink, int completedEvent) {
+        return new ResultSink() {
+            @Override
+            public void hostDiscovered(DeviceInfo device) {
+                sink.hostDiscovered(device);
+            }
+
+            @Override
+            public void hostCompleted(DeviceInfo device) {
+                record(device, completedEvent);
+                sink.hostCompleted(device);
+            }
+
+            @Override
+            public void hostChanged(DeviceInfo device, DeviceInfo previous) {
+                record(device, CHANGED);
+                sink.hostChanged(device, previous);
+            }
+
+            @Override
+            public void hostLost(DeviceInfo device) {
+                record(device, DOWN);
+                sink.hostLost(device);
+            }
+
+            @Override
+            public void progress(long done, long total) {
+                sink.progress(done, total);
+            }
+
+            @Override
+            public void log(String message) {
+                sink.log(message);
+            }
+
+            private void record(DeviceInfo device, int event) {
+                try {
+                    append(device, event);
+                } catch (IOException e) {
+                    sink.log("Cannot record scan history: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    // Every recorded state of one host (IPv4 or IPv6 text), oldest first
+    synchronized List<Snapshot> history(String ip) {
+        List<Snapshot> result = new ArrayList<>();
+        int address = addressKey(ip);
+        for (Segment segment : sealed) {
+            int from = segment.firstIndexOf(address);
+            for (int i = from; i >= 0 && i < segment.count && segment.indexedAddress(i) == address; i++) {
+                addIfSameHost(result, segment.decode(segment.indexedOffset(i)), ip);
+            }
+        }
+        for (int i = 0; i < activeCount; i++) { // None when read-only
+            if (activeAddresses[i] == address) {
+                addIfSameHost(result, decode(active.buffer, activeOffsets[i]), ip);
+            }
+        }
+        return result;
+    }
+
+    // Time a port was first recorded open on a host, in epoch milliseconds; -1 if never
+    synchronized long firstSeen(String ip, int port) {
+        for (Snapshot snapshot : history(ip)) {
+            if (snapshot.hasPort(port)) return snapshot.timeMillis();
+        }
+        return -1;
+    }
+
+    // Every record with fromMillis <= time < toMillis, oldest first
+    synchronized List<Snapshot> between(long fromMillis, long toMillis) {
+        List<Snapshot> result = new ArrayList<>();
+        for (Segment segment : sealed) {
+            if (segment.lastTime < fromMillis || segment.firstTime >= toMillis) continue;
+            for (int i = segment.firstRecordAt(fromMillis); i < segment.count; i++) {
+                Snapshot snapshot = segment.decode(segment.recordOffset(i));
+                if (snapshot.timeMillis() >= toMillis) break;
+                result.add(snapshot);
+            }
+        }
+        for (int i = 0; i < activeCount; i++) {
+            long time = active.buffer.getLong(activeOffsets[i] + 4);
+            if (time >= fromMillis && time < toMillis) {
+                result.add(decode(active.buffer, activeOffsets[i]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (lock == null) return; // Read-only
+        active.buffer.force();
+        try {
+            lock.channel().close(); // Releases the lock
+        } catch (IOException e) {
+            // Released when the process exits anyway
+        }
+    }
+
+    // Seal the active segment and start the next one, large enough for the pending record
+    private void roll(int recordLength) throws IOException {
+        seal(active, Arrays.copyOf(activeOffsets, activeCount));
+        active.loadIndex();
+        sealed.add(active);
+        long next = active.number + 1;
+        active = Segment.create(directory.resolve("segment-" + next + ".log"), next, Math.max(segmentBytes, SEGMENT_HEADER + recordLength));
+        activeCount = 0;
+    }
+
+    // Write a segment's index next to it; the segment counts as sealed once the index exists
+    private void seal(Segment segment, int[] offsets) throws IOException {
+        segment.buffer.force();
+        ByteBuffer index = buildIndex(segment, offsets);
+        Path target = indexPath(segment.path);
+        Path temporary = Files.createTempFile(directory, "index", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (index.hasRemaining()) channel.write(index);
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE); // Readers never see a partial index
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // The index of a segment whose records start at offsets
+    private static ByteBuffer buildIndex(Segment segment, int[] offsets) {
+        long[] byAddress = new long[offsets.length]; // Address in the high half, record number in the low
+        long firstTime = Long.MAX_VALUE;
+        long lastTime = Long.MIN_VALUE;
+        for (int i = 0; i < offsets.length; i++) {
+            byAddress[i] = (long) segment.buffer.getInt(offsets[i] + 14) << 32 | i;
+            long time = segment.buffer.getLong(offsets[i] + 4);
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+        }
+        Arrays.sort(byAddress); // Address order (as signed ints), then time order within an address
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER + offsets.length * 12);
+        index.putInt(INDEX_MAGIC).putInt(offsets.length).putLong(firstTime).putLong(lastTime);
+        for (int offset : offsets) index.putInt(offset);
+        for (long entry : byAddress) index.putInt((int) (entry >>> 32)).putInt((int) entry);
+        return index.flip();
+    }
+
+    private void rebuildActiveIndex() {
+        int[] offsets = scanOffsets(active);
+        activeOffsets = Arrays.copyOf(offsets, Math.max(1024, offsets.length * 2));
+        activeAddresses = new int[activeOffsets.length];
+        activeCount = offsets.length;
+        for (int i = 0; i < activeCount; i++) {
+            activeAddresses[i] = active.buffer.getInt(offsets[i] + 14);
+        }
+    }
+
+    // Offsets of the committed records of a segment, by walking their length prefixes
+    private static int[] scanOffsets(Segment segment) {
+        int[] offsets = new int[1024];
+        int count = 0;
+        long position = SEGMENT_HEADER;
+        while (position < segment.end) {
+            if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = (int) position;
+            position += segment.buffer.getInt((int) position);
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private static void addIfSameHost(List<Snapshot> result, Snapshot snapshot, String ip) {
+        if (snapshot.ip().equals(ip) || ip.indexOf(':') >= 0 && sameIpv6(snapshot.ip(), ip)) { // IPv6 keys may collide
+            result.add(snapshot);
+        }
+    }
+
+    private static boolean sameIpv6(String a, String b) {
+        long[] first = new long[2];
+        long[] second = new long[2];
+        return Ipv6Address.parse(a, first) && Ipv6Address.parse(b, second) && first[0] == second[0] && first[1] == second[1];
+    }
+
+    // The address a host is indexed under: the IPv4 address, or the key of an IPv6 one
+    private static int addressKey(String ip) {
+        long[] ipv6 = new long[2];
+        if (ip.indexOf(':') >= 0 && Ipv6Address.parse(ip, ipv6)) {
+            return Ipv6Address.key(ipv6[0], ipv6[1]);
+        }
+        return TargetSpec.parseAddress(ip);
+    }
+
+    private static byte[] encode(DeviceInfo device, int event, long timeMillis) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.putInt(0).putLong(timeMillis).put((byte) event).put((byte) (device.isIpv6() ? FLAG_IPV6 : 0));
+        buffer.putInt(device.ip());
+        if (device.isIpv6()) {
+            long[] ipv6 = new long[2];
+            Ipv6Address.parse(device.ipAddress(), ipv6);
+            buffer.putLong(ipv6[0]).putLong(ipv6[1]);
+        }
+        long mac = device.mac();
+        buffer.putLong(mac == DeviceStore.MAC_PENDING ? NeighborTable.UNKNOWN : mac);
+        double rtt = device.rttMillis();
+        buffer.putInt(rtt < 0 ? -1 : (int) Math.round(rtt * 1000));
+        buffer = putString(buffer, device.localInterface());
+        String hostname = device.hostname();
+        buffer = putString(buffer, hostname.equals(device.ipAddress()) ? null : hostname); // Unresolved names read back as the IP
+        buffer = putString(buffer, device.vendor());
+        int portCount = device.portCount();
+        buffer = ensure(buffer, 2);
+        buffer.putChar((char) portCount); // Up to 65535 after a full-range scan
+        for (int i = 0; i < portCount; i++) {
+            buffer = ensure(buffer, 2);
+            buffer.putChar((char) device.port(i));
+            buffer = putString(buffer, device.portService(i));
+        }
+        int udpCount = device.udpPortCount();
+        buffer = ensure(buffer, 2 + udpCount * 2);
+        buffer.putChar((char) udpCount);
+        for (int i = 0; i < udpCount; i++) {
+            buffer.putChar((char) device.udpPort(i));
+        }
+        buffer.putInt(0, buffer.position());
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static Snapshot decode(ByteBuffer buffer, int offset) {
+        ByteBuffer record = buffer.slice(offset, buffer.getInt(offset));
+        record.position(4);
+        long time = record.getLong();
+        int event = record.get();
+        boolean ipv6 = (record.get() & FLAG_IPV6) != 0;
+        int address = record.getInt();
+        String ip = ipv6 ? Ipv6Address.format(record.getLong(), record.getLong()) : TargetSpec.formatAddress(address);
+        long mac = record.getLong();
+        int rttMicros = record.getInt();
+        String localInterface = getString(record);
+        String hostname = getString(record);
+        String vendor = getString(record);
+        int[] ports = new int[record.getChar()];
+        String[] services = new String[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = record.getChar();
+            services[i] = getString(record);
+        }
+        int[] udpPorts = new int[record.getChar()];
+        for (int i = 0; i < udpPorts.length; i++) {
+            udpPorts[i] = record.getChar();
+        }
+        return new Snapshot(time, event, ip, localInterface, hostname, mac, vendor, rttMicros < 0 ? -1 : rttMicros / 1000.0,
+            ports, services, udpPorts);
+    }
+
+    private static ByteBuffer putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer = ensure(buffer, 2);
+            buffer.putShort((short) -1);
+            return buffer;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        buffer = ensure(buffer, 2 + length);
+        buffer.putShort((short) length).put(bytes, 0, length);
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) return buffer;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        return larger.put(buffer.flip());
+    }
+
+    // Segment files of a history directory, oldest first
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.log"))
+                .sorted((a, b) -> Long.compare(number(a), number(b))).toList();
+        }
+    }
+
+    private static Path indexPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+    }
+
+    private static long number(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - 4));
+    }
+
+    // One segment file, mapped whole, and once sealed its mapped index
+    private static final class Segment {
+        final Path path;
+        final long number;
+        final MappedByteBuffer buffer;
+        long end; // Committed bytes, header included
+        ByteBuffer index; // Null while the segment is active
+        int count;
+        long firstTime, lastTime;
+
+        private Segment(Path path, long number, MappedByteBuffer buffer) {
+            this.path = path;
+            this.number = number;
+            this.buffer = buffer;
+            this.end = buffer.getLong(16);
+        }
+
+        static Segment create(Path path, long number, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity); // Grows the file
+                buffer.putInt(0, SEGMENT_MAGIC).putLong(8, System.currentTimeMillis()).putLong(16, SEGMENT_HEADER);
+                return new Segment(path, number, buffer); // The mapping stays valid after the channel closes
+            }
+        }
+
+        static Segment map(Path path, long number, boolean writable) throws IOException {
+            try (FileChannel channel = writable
+                     ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                     : FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (channel.size() < SEGMENT_HEADER || buffer.getInt(0) != SEGMENT_MAGIC || buffer.getLong(16) > channel.size()) {
+                    throw new IOException("Not a history segment: " + path);
+                }
+                return new Segment(path, number, buffer);
+            }
+        }
+
+        void loadIndex() throws IOException {
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(indexPath(path), StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (mapped.getInt(0) != INDEX_MAGIC) {
+                throw new IOException("Not a history index: " + indexPath(path));
+            }
+            useIndex(mapped);
+        }
+
+        void useIndex(ByteBuffer index) {
+            this.index = index;
+            count = index.getInt(4);
+            firstTime = index.getLong(8);
+            lastTime = index.getLong(16);
+        }
+
+        // Offset of the i-th record in time order
+        int recordOffset(int i) {
+            return index.getInt(INDEX_HEADER + i * 4);
+        }
+
+        // Address and offset of the i-th entry of the address index
+        int indexedAddress(int i) {
+            return index.getInt(INDEX_HEADER + count * 4 + i * 8);
+        }
+
+        int indexedOffset(int i) {
+            return recordOffset(index.getInt(INDEX_HEADER + count * 4 + i * 8 + 4));
+        }
+
+        // First entry of the address index for address, or -1
+        int firstIndexOf(int address) {
+            int low = 0;
+            int high = count; // Lower bound search
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (indexedAddress(mid) < address) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low < count && indexedAddress(low) == address ? low : -1;
+        }
+
+        // First record in time order with time >= millis
+        int firstRecordAt(long millis) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getLong(recordOffset(mid) + 4) < millis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Snapshot decode(int offset) {
+            return ScanHistory.decode(buffer, offset);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Continuous monitoring of one or more target sets. A priority queue orders two kinds of task
+// by due time: a recheck of each host known to be up, on a short cadence, and a sweep of each
+// block of targets, on a long one, which only probes the addresses not known to be up. Due
+// times are jittered so checks spread out instead of arriving in bursts. Only changes reach
+// the sink: hosts that come up, hosts whose ports, services, name or MAC change, and hosts
+// that stop answering.
+final class ScanMonitor {
+    private static final int SWEEP_BLOCK = 256; // Addresses per sweep task
+    private static final int MISSES_BEFORE_LOST = 2; // Unanswered rechecks before a host counts as down
+    private static final int STORE_ROWS = 4096; // Rows a store may hold beyond twice the hosts up before it is replaced
+
+    private final ScanContext context;
+    private final ScanConfig config;
+    private final PriorityQueue<Task> schedule = new PriorityQueue<>(Comparator.comparingLong(task -> task.dueNanos)); // Guarded by itself
+    private final Map<Integer, Host> hosts = new ConcurrentHashMap<>(); // Hosts known to be up, by address
+    private DeviceStore store = new DeviceStore(); // Receives the rows of new checks; only touched by the scheduler thread
+
+    ScanMonitor(ScanContext context) {
+        this.context = context;
+        this.config = context.config;
+    }
+
+    // A recheck of one host known to be up (block == null), or a sweep of one block of targets
+    private static final class Task {
+        final int scope; // Index of the scope, and of its pipeline
+        final int address;
+        final TargetSpec block;
+        long dueNanos;
+
+        Task(int scope, int address, TargetSpec block) {
+            this.scope = scope;
+            this.address = address;
+            this.block = block;
+        }
+    }
+
+    // A host known to be up. Only one check of it is in flight at a time, so the callbacks of
+    // its checks never race.
+    private static final class Host {
+        volatile DeviceInfo last; // State at the last check that answered
+        int misses; // Rechecks in a row that got no answer
+
+        Host(DeviceInfo last) {
+            this.last = last;
+        }
+    }
+
+    // Monitor every scope until interrupted. The first sweep of every block is due at once,
+    // so the first pass reports the whole inventory as new hosts.
+    void run(List<ScanSession.Scope> scopes, ResultSink output) throws InterruptedException {
+        if (context.historyUnavailable != null) {
+            output.log("Scan history unavailable: " + context.historyUnavailable);
+        }
+        ResultSink sink = context.history != null ? context.history.recording(output, ScanHistory.UP) : output; // Every change is recorded
+        ResultSink pipelineSink = new ResultSink() { // Results are compared before anything reaches the sink
+            @Override
+            public void hostCompleted(DeviceInfo device) {
+            }
+
+            @Override
+            public void log(String message) {
+                sink.log(message);
+            }
+        };
+        List<HostScanPipeline> pipelines = new ArrayList<>();
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < scopes.size(); i++) {
+                pipelines.add(new HostScanPipeline(context, store, pipelineSink, scopes.get(i).via()));
+                for (TargetSpec block : scopes.get(i).targets().split(SWEEP_BLOCK)) {
+                    schedule(new Task(i, 0, block), now);
+                }
+            }
+            while (true) {
+                Task task = nextDue();
+                if (task.block == null) {
+                    recheck(pipelines.get(task.scope), task, sink);
+                } else {
+                    sweep(pipelines.get(task.scope), task, sink);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (HostScanPipeline pipeline : pipelines) {
+                pipeline.cancel(); // Monitoring stopped: drop every check in flight
+            }
+            throw e;
+        } finally {
+            for (HostScanPipeline pipeline : pipelines) {
+                pipeline.close();
+            }
+        }
+    }
+
+    // Probe every address of a block that is not known to be up; the block is due again
+    // once all of them have finished
+    private void sweep(HostScanPipeline pipeline, Task task, ResultSink sink) throws InterruptedException {
+        DeviceStore into = currentStore();
+        AtomicInteger pending = new AtomicInteger(1); // Held until every address is submitted
+        PrimitiveIterator.OfInt addresses = task.block.iterator();
+        while (addresses.hasNext()) {
+            int address = addresses.nextInt();
+            if (hosts.containsKey(address)) continue; // Rechecked on its own cadence
+            pending.incrementAndGet();
+            pipeline.submit(address, into).whenComplete((device, error) -> {
+                if (device != null) {
+                    hostUp(task.scope, device, sink);
+                } else if (error != null && !(error instanceof CancellationException)) {
+                    sink.log("Error: " + error.getMessage());
+                }
+                if (pending.decrementAndGet() == 0) {
+                    schedule(task, jittered(config.monitorSweepMs));
+                }
+            });
+        }
+        if (pending.decrementAndGet() == 0) {
+            schedule(task, jittered(config.monitorSweepMs));
+        }
+    }
+
+    private void hostUp(int scope, DeviceInfo device, ResultSink sink) {
+        if (hosts.putIfAbsent(device.ip(), new Host(device)) != null) return;
+        sink.hostCompleted(device);
+        schedule(new Task(scope, device.ip(), null), jittered(config.monitorLiveMs));
+    }
+
+    // Scan a known host again and report it if anything changed; a host that misses
+    // MISSES_BEFORE_LOST rechecks in a row is reported down and left to the sweeps
+    private void recheck(HostScanPipeline pipeline, Task task, ResultSink sink) throws InterruptedException {
+        Host host = hosts.get(task.address);
+        if (host == null) return;
+        pipeline.submit(task.address, currentStore()).whenComplete((device, error) -> {
+            if (error instanceof CancellationException) return; // Monitoring stopped
+            if (device != null) {
+                host.misses = 0;
+                DeviceInfo previous = host.last;
+                host.last = device;
+                String change = describeChange(previous, device);
+                if (change != null) {
+                    sink.log(device.ipAddress() + " changed: " + change);
+                    sink.hostChanged(device, previous);
+                }
+            } else if (error != null) {
+                sink.log("Error: " + error.getMessage());
+            } else if (++host.misses < MISSES_BEFORE_LOST) {
+                schedule(task, jittered(config.monitorLiveMs / 4)); // Try again soon before calling it down
+                return;
+            } else {
+                hosts.remove(task.address);
+                sink.log(host.last.ipAddress() + " is down");
+                sink.hostLost(host.last);
+                return;
+            }
+            schedule(task, jittered(config.monitorLiveMs));
+        });
+    }
+
+    // Store for the next checks. Every recheck adds a row, so the store is replaced once it
+    // holds many more rows than there are hosts up; the views of older rows keep their store
+    // alive until those hosts have been checked again.
+    private DeviceStore currentStore() {
+        if (store.size() > STORE_ROWS + 2L * hosts.size()) {
+            store = new DeviceStore();
+        }
+        return store;
+    }
+
+    private Task nextDue() throws InterruptedException {
+        synchronized (schedule) {
+            while (true) {
+                Task head = schedule.peek();
+                if (head == null) {
+                    schedule.wait();
+                    continue;
+                }
+                long waitNanos = head.dueNanos - System.nanoTime();
+                if (waitNanos <= 0) {
+                    return schedule.poll();
+                }
+                TimeUnit.NANOSECONDS.timedWait(schedule, waitNanos);
+            }
+        }
+    }
+
+    private void schedule(Task task, long dueNanos) {
+        synchronized (schedule) {
+            task.dueNanos = dueNanos;
+            schedule.add(task);
+            schedule.notifyAll(); // It may be due before the task the scheduler is waiting for
+        }
+    }
+
+    // Now plus the interval, stretched or shrunk by up to the configured jitter fraction
+    private long jittered(long intervalMs) {
+        double factor = 1 + config.monitorJitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return System.nanoTime() + (long) (intervalMs * factor * 1_000_000);
+    }
+
+    // What differs between two checks of a host, e.g. "TCP ports 22 -> 22,80; hostname a -> b";
+    // null if nothing that is monitored changed
+    static String describeChange(DeviceInfo before, DeviceInfo after) {
+        List<String> changes = new ArrayList<>();
+        int[] portsBefore = before.openPorts();
+        int[] portsAfter = after.openPorts();
+        if (!Arrays.equals(portsBefore, portsAfter)) {
+            changes.add("TCP ports " + formatPorts(portsBefore) + " -> " + formatPorts(portsAfter));
+        } else {
+            for (int i = 0; i < portsAfter.length; i++) {
+                if (!Objects.equals(before.portService(i), after.portService(i))) {
+                    changes.add("port " + portsAfter[i] + " " + before.portService(i) + " -> " + after.portService(i));
+                }
+                if (!Objects.equals(before.portCertificate(i), after.portCertificate(i))) {
+                    changes.add("port " + portsAfter[i] + " certificate");
+                }
+            }
+        }
+        int[] udpBefore = before.openUdpPorts();
+        int[] udpAfter = after.openUdpPorts();
+        if (!Arrays.equals(udpBefore, udpAfter)) {
+            changes.add("UDP ports " + formatPorts(udpBefore) + " -> " + formatPorts(udpAfter));
+        }
+        if (!before.hostname().equals(after.hostname())) {
+            changes.add("hostname " + before.hostname() + " -> " + after.hostname());
+        }
+        if (before.mac() != after.mac()) {
+            changes.add("MAC " + before.macAddress() + " -> " + after.macAddress());
+        }
+        return changes.isEmpty() ? null : String.join("; ", changes);
+    }
+
+    private static String formatPorts(int[] ports) {
+        if (ports.length == 0) return "none";
+        StringBuilder sb = new StringBuilder();
+        for (int port : ports) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(port);
+        }
+        return sb.toString();
+    }
+}
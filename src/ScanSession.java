@@ -0,0 +1,165 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs one scan over one or more target sets: streams addresses into the pipeline and reports
+// each host to the sink the moment it finishes, so a slow host never holds back faster ones.
+// Every target set has its own pipeline and feeder thread, so the networks of several
+// interfaces are scanned side by side. With IPv6 on, each interface also gets a thread that
+// discovers the IPv6 hosts on its link and feeds them into the same pipeline.
+final class ScanSession {
+    // A target set and the interface its probes are bound to; null leaves the choice to the routing table
+    record Scope(TargetSpec targets, LocalInterface via) {
+        @Override
+        public String toString() {
+            return via == null ? targets.toString() : targets + " via " + via.name();
+        }
+    }
+
+    private final ScanContext context;
+    private final DeviceStore store = new DeviceStore(); // Every live host found by this session
+    private final Object lock = new Object();
+    private long outstanding; // Hosts submitted but not yet finished, guarded by lock
+
+    ScanSession(ScanContext context) {
+        this.context = context;
+    }
+
+    // Devices found so far; views handed to the sink read from here
+    DeviceStore store() {
+        return store;
+    }
+
+    // Number of addresses across all scopes
+    static long size(List<Scope> scopes) {
+        long total = 0;
+        for (Scope scope : scopes) {
+            total += scope.targets().size();
+        }
+        return total;
+    }
+
+    // Scan every scope in parallel and return once all of their targets have been reported;
+    // an interrupt cancels the scan and is rethrown
+    void run(List<Scope> scopes, ResultSink sink) throws InterruptedException {
+        AtomicLong total = new AtomicLong(size(scopes)); // Grows as IPv6 hosts are discovered
+        AtomicLong done = new AtomicLong();
+        context.neighbors.refresh(); // Pick up neighbors learned since the last scan
+        if (context.icmpUnavailable != null) {
+            sink.log("ICMP discovery unavailable (" + context.icmpUnavailable + "); using TCP ping");
+        }
+        if (context.historyUnavailable != null) {
+            sink.log("Scan history unavailable: " + context.historyUnavailable);
+        }
+        ResultSink results = context.history != null ? context.history.recording(sink, ScanHistory.SEEN) : sink;
+        List<HostScanPipeline> pipelines = new ArrayList<>();
+        List<Thread> feeders = new ArrayList<>();
+        try {
+            for (Scope scope : scopes) {
+                HostScanPipeline pipeline = new HostScanPipeline(context, store, results, scope.via());
+                pipelines.add(pipeline);
+                feeders.add(Thread.ofPlatform().name("scan-feeder-" + feeders.size()).daemon()
+                    .start(() -> feed(pipeline, scope.targets(), results, done, total)));
+            }
+            if (context.config.ipv6) {
+                Set<String> linksSeen = new HashSet<>();
+                for (int i = 0; i < scopes.size(); i++) {
+                    LocalInterface via = scopes.get(i).via();
+                    if (via == null || !linksSeen.add(via.name())) continue; // One discovery per link
+                    HostScanPipeline pipeline = pipelines.get(i);
+                    feeders.add(Thread.ofPlatform().name("ipv6-discovery-" + via.name()).daemon()
+                        .start(() -> feedIpv6(pipeline, via, results, done, total)));
+                }
+            }
+            for (Thread feeder : feeders) {
+                feeder.join();
+            }
+            awaitOutstanding();
+        } catch (InterruptedException e) {
+            for (Thread feeder : feeders) {
+                feeder.interrupt();
+            }
+            for (HostScanPipeline pipeline : pipelines) {
+                pipeline.cancel(); // Scan cancelled: stop every stage and probe
+            }
+            throw e;
+        } finally {
+            for (HostScanPipeline pipeline : pipelines) {
+                pipeline.close();
+            }
+            context.portScanEngine.rttEstimator().clearHosts(); // Host estimates would otherwise pile up across rescans
+        }
+    }
+
+    // Submit every address of one scope; results are delivered by callback
+    private void feed(HostScanPipeline pipeline, TargetSpec targets, ResultSink sink, AtomicLong done, AtomicLong total) {
+        PrimitiveIterator.OfInt hosts = targets.iterator();
+        while (hosts.hasNext()) {
+            synchronized (lock) {
+                outstanding++;
+            }
+            try {
+                // Blocks while the host window is full
+                track(pipeline.submit(hosts.nextInt()), sink, done, total);
+            } catch (InterruptedException e) {
+                finished(); // Cancelled before this host was admitted
+                return;
+            }
+        }
+    }
+
+    // Discover the IPv6 hosts on the link of via and submit each of them
+    private void feedIpv6(HostScanPipeline pipeline, LocalInterface via, ResultSink sink, AtomicLong done, AtomicLong total) {
+        try {
+            Ipv6HostSet hosts = new Ipv6Discovery(context.config.ipv6WaitMs).discover(via.networkInterface());
+            if (hosts.size() == 0) return;
+            sink.log("Found " + hosts.size() + " IPv6 hosts on " + via.name());
+            total.addAndGet(hosts.size());
+            for (int i = 0; i < hosts.size(); i++) {
+                synchronized (lock) {
+                    outstanding++;
+                }
+                try {
+                    track(pipeline.submit(hosts, i, via.networkInterface()), sink, done, total);
+                } catch (InterruptedException e) {
+                    finished();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled during discovery
+        }
+    }
+
+    // Report a submitted host when it finishes
+    private void track(CompletableFuture<DeviceInfo> result, ResultSink sink, AtomicLong done, AtomicLong total) {
+        result.whenComplete((device, error) -> {
+            if (device != null) {
+                sink.hostCompleted(device);
+            } else if (error != null && !(error instanceof CancellationException)) {
+                sink.log("Error: " + error.getMessage());
+            }
+            synchronized (done) { // Keep progress reports monotonic
+                sink.progress(done.incrementAndGet(), total.get());
+            }
+            finished();
+        });
+    }
+
+    private void finished() {
+        synchronized (lock) {
+            if (--outstanding == 0) lock.notifyAll();
+        }
+    }
+
+    private void awaitOutstanding() throws InterruptedException {
+        synchronized (lock) {
+            while (outstanding > 0) lock.wait();
+        }
+    }
+}
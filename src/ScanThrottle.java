@@ -0,0 +1,123 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Global pacing shared by every component that sends probes: a token bucket limits new
+// connection attempts per second, and a cap bounds how many are outstanding at once.
+// Both limits can be changed while a scan is running.
+final class ScanThrottle {
+    private static final double BURST_SECONDS = 0.05; // Bucket holds 50 ms worth of tokens
+
+    private final ReentrantLock lock = new ReentrantLock(true); // Fair, so no prober starves
+    private final Condition changed = lock.newCondition();
+    private double ratePerSecond; // 0 = unlimited
+    private int maxInFlight;
+    private int inFlight;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    ScanThrottle(double ratePerSecond, int maxInFlight) {
+        setRate(ratePerSecond);
+        setMaxInFlight(maxInFlight);
+    }
+
+    // Wait for an in-flight slot and a rate token; pair every call with release()
+    void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (inFlight >= maxInFlight) {
+                    changed.await();
+                    continue;
+                }
+                if (ratePerSecond <= 0) break;
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    break;
+                }
+                long waitNanos = (long) Math.ceil((1 - tokens) / ratePerSecond * 1e9);
+                changed.awaitNanos(waitNanos); // Also woken early if the limits change
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Give back an in-flight slot once the probe has finished
+    void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Change the connection rate; 0 or less disables rate limiting
+    void setRate(double ratePerSecond) {
+        lock.lock();
+        try {
+            refill();
+            this.ratePerSecond = Math.max(0, ratePerSecond);
+            tokens = Math.min(tokens, burst());
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("In-flight cap must be positive: " + maxInFlight);
+        }
+        lock.lock();
+        try {
+            this.maxInFlight = maxInFlight;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double rate() {
+        lock.lock();
+        try {
+            return ratePerSecond;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int maxInFlight() {
+        lock.lock();
+        try {
+            return maxInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (ratePerSecond > 0) {
+            tokens = Math.min(burst(), tokens + (now - lastRefillNanos) * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefillNanos = now;
+    }
+
+    private double burst() {
+        return Math.max(1, ratePerSecond * BURST_SECONDS);
+    }
+}
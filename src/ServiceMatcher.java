@@ -0,0 +1,211 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+// Identifies a service from the first bytes it sends. Every signature is compiled into one
+// Aho-Corasick automaton, so a banner is classified in a single pass over its bytes no matter
+// how many signatures there are. Matching ignores ASCII case.
+final class ServiceMatcher {
+    // A byte pattern naming a protocol and/or the product implementing it. Anchored patterns
+    // only count at the start of the banner; a product's version is read from the bytes after it.
+    record Signature(String pattern, String service, String product, boolean anchored) {
+    }
+
+    // Service identified from a banner; product and version may be null
+    record Match(String service, String product, String version) {
+        @Override
+        public String toString() {
+            if (product == null) return service;
+            return service + " (" + product + (version != null ? " " + version : "") + ")";
+        }
+    }
+
+    // Built-in signatures, most specific first within each protocol
+    static final List<Signature> DEFAULT_SIGNATURES = List.of(
+        new Signature("SSH-", "SSH", null, true),
+        new Signature("OpenSSH_", "SSH", "OpenSSH", false),
+        new Signature("dropbear_", "SSH", "Dropbear", false),
+        new Signature("HTTP/1.", "HTTP", null, true),
+        new Signature("HTTP/2", "HTTP", null, true),
+        new Signature("Server: nginx", "HTTP", "nginx", false),
+        new Signature("Server: Apache", "HTTP", "Apache httpd", false),
+        new Signature("Server: Microsoft-IIS", "HTTP", "Microsoft IIS", false),
+        new Signature("Server: lighttpd", "HTTP", "lighttpd", false),
+        new Signature("Server: Jetty", "HTTP", "Jetty", false),
+        new Signature("Server: Kestrel", "HTTP", "Kestrel", false),
+        new Signature("Server: gunicorn", "HTTP", "gunicorn", false),
+        new Signature("Server: SimpleHTTP", "HTTP", "Python http.server", false),
+        new Signature("Server: Caddy", "HTTP", "Caddy", false),
+        new Signature("Server: cloudflare", "HTTP", "Cloudflare", false),
+        new Signature("RTSP/1.0", "RTSP", null, true),
+        new Signature("SIP/2.0", "SIP", null, true),
+        new Signature("ESMTP", "SMTP", null, false),
+        new Signature("Postfix", "SMTP", "Postfix", false),
+        new Signature("Exim", "SMTP", "Exim", false),
+        new Signature("Sendmail", "SMTP", "Sendmail", false),
+        new Signature("220-FileZilla Server", "FTP", "FileZilla Server", false),
+        new Signature("FTP", "FTP", null, false),
+        new Signature("vsFTPd", "FTP", "vsftpd", false),
+        new Signature("ProFTPD", "FTP", "ProFTPD", false),
+        new Signature("Pure-FTPd", "FTP", "Pure-FTPd", false),
+        new Signature("+OK", "POP3", null, true),
+        new Signature("Dovecot", "POP3/IMAP", "Dovecot", false),
+        new Signature("* OK", "IMAP", null, true),
+        new Signature("RFB 00", "VNC", null, true),
+        new Signature("mysql_native_password", "MySQL", "MySQL", false),
+        new Signature("MariaDB", "MySQL", "MariaDB", false),
+        new Signature("-ERR unknown command", "Redis", null, false),
+        new Signature("-NOAUTH", "Redis", null, true),
+        new Signature("AMQP", "AMQP", null, true),
+        new Signature("\u00FF\u00FB", "Telnet", null, true), // IAC WILL
+        new Signature("\u00FF\u00FD", "Telnet", null, true)); // IAC DO
+
+    private final Signature[] signatures;
+    private final byte[] classes; // Byte -> symbol; only bytes used by some pattern get their own
+    private final int alphabet;
+    private final int[] transitions; // state * alphabet + symbol -> next state (complete DFA)
+    private final int[][] outputs; // Signatures ending in each state, including via failure links
+
+    private ServiceMatcher(Signature[] signatures, byte[] classes, int alphabet, int[] transitions, int[][] outputs) {
+        this.signatures = signatures;
+        this.classes = classes;
+        this.alphabet = alphabet;
+        this.transitions = transitions;
+        this.outputs = outputs;
+    }
+
+    // Build the automaton: a trie of the patterns, then failure links filled in breadth-first
+    // so that every state has a direct transition for every byte
+    static ServiceMatcher compile(List<Signature> signatures) {
+        byte[] classes = new byte[256]; // Symbol 0 stands for every byte no pattern uses
+        int alphabet = 1;
+        for (Signature signature : signatures) {
+            for (char c : signature.pattern().toCharArray()) {
+                if (c > 0xFF) throw new IllegalArgumentException("Pattern is not a byte string: " + signature.pattern());
+                if (classes[fold(c)] == 0) {
+                    classes[fold(c)] = (byte) alphabet++;
+                }
+            }
+        }
+        for (int c = 'A'; c <= 'Z'; c++) {
+            classes[c] = classes[fold(c)];
+        }
+        List<int[]> trie = new ArrayList<>();
+        List<int[]> out = new ArrayList<>();
+        trie.add(newState(alphabet));
+        out.add(new int[0]);
+        for (int s = 0; s < signatures.size(); s++) {
+            int state = 0;
+            for (char c : signatures.get(s).pattern().toCharArray()) {
+                int symbol = classes[c] & 0xFF;
+                if (trie.get(state)[symbol] <= 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState(alphabet));
+                    out.add(new int[0]);
+                }
+                state = trie.get(state)[symbol];
+            }
+            int[] ending = out.get(state);
+            ending = Arrays.copyOf(ending, ending.length + 1);
+            ending[ending.length - 1] = s;
+            out.set(state, ending);
+        }
+        int[] fail = new int[trie.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < alphabet; symbol++) {
+            int next = trie.get(0)[symbol];
+            if (next > 0) {
+                queue.add(next);
+            } else {
+                trie.get(0)[symbol] = 0;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] merged = out.get(state);
+            int[] inherited = out.get(fail[state]);
+            if (inherited.length > 0) { // Patterns that are suffixes of this state also end here
+                merged = Arrays.copyOf(merged, merged.length + inherited.length);
+                System.arraycopy(inherited, 0, merged, merged.length - inherited.length, inherited.length);
+                out.set(state, merged);
+            }
+            for (int symbol = 0; symbol < alphabet; symbol++) {
+                int next = trie.get(state)[symbol];
+                if (next > 0) {
+                    fail[next] = trie.get(fail[state])[symbol];
+                    queue.add(next);
+                } else {
+                    trie.get(state)[symbol] = trie.get(fail[state])[symbol];
+                }
+            }
+        }
+        int[] transitions = new int[trie.size() * alphabet];
+        for (int state = 0; state < trie.size(); state++) {
+            System.arraycopy(trie.get(state), 0, transitions, state * alphabet, alphabet);
+        }
+        return new ServiceMatcher(signatures.toArray(new Signature[0]), classes, alphabet, transitions, out.toArray(new int[0][]));
+    }
+
+    // Classify the bytes between the buffer's position and limit; null if nothing matched.
+    // The first protocol and the first product found win, so earlier bytes take precedence.
+    Match identify(ByteBuffer banner) {
+        int start = banner.position();
+        int end = banner.limit();
+        String service = null;
+        String product = null;
+        String version = null;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = transitions[state * alphabet + (classes[banner.get(i) & 0xFF] & 0xFF)];
+            for (int s : outputs[state]) {
+                Signature signature = signatures[s];
+                int matchStart = i + 1 - signature.pattern().length();
+                if (signature.anchored() && matchStart != start) continue;
+                if (service == null) service = signature.service();
+                if (product == null && signature.product() != null) {
+                    product = signature.product();
+                    version = readVersion(banner, i + 1, end);
+                }
+            }
+        }
+        if (service == null) return null;
+        if (service.equals("SSH") && product == null) {
+            version = readVersion(banner, start + 4, end); // "SSH-2.0-..." carries the software name
+            product = version != null && version.startsWith("2.0-") ? version.substring(4) : null;
+            version = null;
+        }
+        return new Match(service, product, version);
+    }
+
+    // Version token following a product name, e.g. "/1.18.0" or "_8.9p1"
+    private static String readVersion(ByteBuffer banner, int from, int end) {
+        int i = from;
+        if (i < end && (banner.get(i) == '/' || banner.get(i) == '_' || banner.get(i) == ' ')) i++;
+        int tokenStart = i;
+        while (i < end && i - tokenStart < 40) {
+            int b = banner.get(i) & 0xFF;
+            if (!(Character.isLetterOrDigit(b) || b == '.' || b == '-' || b == '_' || b == '+')) break;
+            i++;
+        }
+        if (i == tokenStart || !Character.isDigit(banner.get(tokenStart) & 0xFF)) {
+            return null; // No version, just the next word
+        }
+        byte[] bytes = new byte[i - tokenStart];
+        banner.get(tokenStart, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int[] newState(int alphabet) {
+        int[] state = new int[alphabet];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int fold(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
@@ -0,0 +1,28 @@
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Resolves through the platform resolver (InetAddress), which blocks, so lookups run on a
+// small dedicated pool instead of on scan threads. TTLs are not available from this API.
+final class SystemReverseResolver implements ReverseResolver {
+    private final ExecutorService executor;
+
+    SystemReverseResolver(int threads) {
+        executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("reverse-dns-", 0).daemon().factory());
+    }
+
+    @Override
+    public CompletableFuture<Answer> resolve(int address) {
+        return CompletableFuture.supplyAsync(() -> {
+            String literal = TargetSpec.formatAddress(address);
+            String name = TargetSpec.toInetAddress(address).getCanonicalHostName();
+            return name.equals(literal) ? Answer.negative(-1) : new Answer(name, -1); // Literal back means no PTR
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
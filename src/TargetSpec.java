@@ -0,0 +1,230 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+// Set of IPv4 scan targets built from CIDR blocks, ranges and single addresses, minus an
+// exclusion list. Only the merged range boundaries are stored; addresses are generated
+// lazily as ints, so even a /8 costs a few bytes until a host is actually submitted.
+final class TargetSpec {
+    private final long[] starts; // Sorted, disjoint, inclusive ranges as unsigned 32-bit values
+    private final long[] ends;
+    private final long size;
+    private final String description;
+
+    private TargetSpec(List<long[]> ranges, String description) {
+        starts = new long[ranges.size()];
+        ends = new long[ranges.size()];
+        long total = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            starts[i] = ranges.get(i)[0];
+            ends[i] = ranges.get(i)[1];
+            total += ends[i] - starts[i] + 1;
+        }
+        this.size = total;
+        this.description = description;
+    }
+
+    // Parse comma/whitespace separated targets, e.g. "10.0.0.0/12, 192.168.1.10-192.168.1.20,
+    // 172.16.0.5". Entries prefixed with '!' are excluded, as is everything in the exclude list.
+    static TargetSpec parse(String targets, String exclude) {
+        List<long[]> included = new ArrayList<>();
+        List<long[]> excluded = new ArrayList<>();
+        for (String token : tokens(targets)) {
+            if (token.startsWith("!")) {
+                excluded.add(parseRange(token.substring(1), false));
+            } else {
+                included.add(parseRange(token, true));
+            }
+        }
+        for (String token : tokens(exclude)) {
+            excluded.add(parseRange(token, false));
+        }
+        if (included.isEmpty()) {
+            throw new IllegalArgumentException("No scan targets given");
+        }
+        String description = exclude == null || exclude.isBlank() ? targets.trim() : targets.trim() + " excluding " + exclude.trim();
+        return new TargetSpec(subtract(merge(included), merge(excluded)), description);
+    }
+
+    // Number of addresses that will be generated
+    long size() {
+        return size;
+    }
+
+    // Lazily walk every target address in ascending order
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int range = 0;
+            private long next = starts.length > 0 ? starts[0] : 0;
+
+            @Override
+            public boolean hasNext() {
+                return range < starts.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int address = (int) next;
+                if (next++ == ends[range] && ++range < starts.length) {
+                    next = starts[range];
+                }
+                return address;
+            }
+        };
+    }
+
+    // Cut the targets, in ascending order, into consecutive sets of at most maxSize addresses
+    List<TargetSpec> split(long maxSize) {
+        List<TargetSpec> blocks = new ArrayList<>();
+        List<long[]> current = new ArrayList<>();
+        long currentSize = 0;
+        for (int i = 0; i < starts.length; i++) {
+            long start = starts[i];
+            while (start <= ends[i]) {
+                long end = Math.min(ends[i], start + (maxSize - currentSize) - 1);
+                current.add(new long[] {start, end});
+                currentSize += end - start + 1;
+                if (currentSize == maxSize) {
+                    blocks.add(block(current));
+                    current = new ArrayList<>();
+                    currentSize = 0;
+                }
+                start = end + 1;
+            }
+        }
+        if (!current.isEmpty()) {
+            blocks.add(block(current));
+        }
+        return blocks;
+    }
+
+    // "10.0.0.0-10.0.0.255", from the first to the last address of the ranges
+    private static TargetSpec block(List<long[]> ranges) {
+        return new TargetSpec(ranges, formatAddress((int) ranges.get(0)[0]) + "-" + formatAddress((int) ranges.get(ranges.size() - 1)[1]));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    // Dotted-quad to int; the int holds the address bits in network order
+    static int parseAddress(String text) {
+        String[] parts = text.trim().split("\\.", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+        }
+        int address = 0;
+        for (String part : parts) {
+            int octet;
+            try {
+                octet = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+            }
+            if (octet < 0 || octet > 255) {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + text);
+            }
+            address = (address << 8) | octet;
+        }
+        return address;
+    }
+
+    static String formatAddress(int address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    // Build an InetAddress without a name lookup
+    static InetAddress toInetAddress(int address) {
+        try {
+            return InetAddress.getByAddress(new byte[] {
+                (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e); // Cannot happen for a 4-byte address
+        }
+    }
+
+    private static List<String> tokens(String text) {
+        if (text == null || text.isBlank()) return List.of();
+        return Arrays.asList(text.trim().split("[,\\s]+"));
+    }
+
+    // "a.b.c.d/n", "a.b.c.d-e.f.g.h", "a.b.c.d-h" (last octet range) or a single address.
+    // hostsOnly drops a block's network and broadcast addresses; exclusions always cover the whole block.
+    private static long[] parseRange(String token, boolean hostsOnly) {
+        int slash = token.indexOf('/');
+        if (slash >= 0) {
+            int prefix;
+            try {
+                prefix = Integer.parseInt(token.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + token);
+            }
+            if (prefix < 0 || prefix > 32) {
+                throw new IllegalArgumentException("Invalid prefix length: " + token);
+            }
+            long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+            long network = Integer.toUnsignedLong(parseAddress(token.substring(0, slash))) & mask;
+            long broadcast = network | (~mask & 0xFFFFFFFFL);
+            if (hostsOnly && prefix <= 30) { // Skip the network and broadcast addresses, like the old 1..254 loop
+                return new long[] {network + 1, broadcast - 1};
+            }
+            return new long[] {network, broadcast};
+        }
+        int dash = token.indexOf('-');
+        if (dash >= 0) {
+            long start = Integer.toUnsignedLong(parseAddress(token.substring(0, dash)));
+            String endText = token.substring(dash + 1);
+            long end = endText.contains(".")
+                ? Integer.toUnsignedLong(parseAddress(endText))
+                : (start & 0xFFFFFF00L) | Integer.toUnsignedLong(parseAddress("0.0.0." + endText));
+            if (end < start) {
+                throw new IllegalArgumentException("Range end before start: " + token);
+            }
+            return new long[] {start, end};
+        }
+        long address = Integer.toUnsignedLong(parseAddress(token));
+        return new long[] {address, address};
+    }
+
+    // Sort and coalesce overlapping or adjacent ranges
+    private static List<long[]> merge(List<long[]> ranges) {
+        List<long[]> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : sorted) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new long[] {range[0], range[1]});
+            }
+        }
+        return merged;
+    }
+
+    // Remove every excluded range from the included ones; both lists are merged and sorted
+    private static List<long[]> subtract(List<long[]> included, List<long[]> excluded) {
+        List<long[]> result = new ArrayList<>();
+        int e = 0;
+        for (long[] range : included) {
+            long start = range[0];
+            long end = range[1];
+            while (e < excluded.size() && excluded.get(e)[1] < start) e++;
+            int i = e;
+            while (start <= end && i < excluded.size() && excluded.get(i)[0] <= end) {
+                long[] cut = excluded.get(i);
+                if (cut[0] > start) result.add(new long[] {start, cut[0] - 1});
+                start = Math.max(start, cut[1] + 1);
+                i++;
+            }
+            if (start <= end) result.add(new long[] {start, end});
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.function.Consumer;
+
+// Hashed timer wheel used by the selector loops to expire probe deadlines.
+// Not thread-safe: each wheel is owned and driven by a single selector thread.
+final class TimerWheel<T> {
+    // Handle for a scheduled deadline, linked into its bucket for O(1) cancellation
+    static final class Timeout<T> {
+        final T payload;
+        long deadlineTick;
+        int bucket = -1; // -1 once expired or cancelled
+        Timeout<T> prev, next;
+
+        private Timeout(T payload) {
+            this.payload = payload;
+        }
+
+        boolean isActive() {
+            return bucket >= 0;
+        }
+    }
+
+    private final long tickNanos;
+    private final Timeout<T>[] buckets;
+    private final int mask;
+    private final long startNanos;
+    private long currentTick; // Last tick that has been fully processed
+    private int size;
+
+    TimerWheel(long tickMillis, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickNanos = tickMillis * 1_000_000L;
+        @SuppressWarnings("unchecked") // Every slot only ever holds Timeout<T>
+        Timeout<T>[] buckets = (Timeout<T>[]) new Timeout<?>[wheelSize];
+        this.buckets = buckets;
+        this.mask = wheelSize - 1;
+        this.startNanos = System.nanoTime();
+    }
+
+    // Schedule payload to expire at the given System.nanoTime() deadline
+    Timeout<T> schedule(T payload, long deadlineNanos) {
+        Timeout<T> timeout = new Timeout<>(payload);
+        insert(timeout, deadlineNanos);
+        return timeout;
+    }
+
+    // Move an active timeout to a new deadline (e.g. once a better RTT estimate is known)
+    void reschedule(Timeout<T> timeout, long deadlineNanos) {
+        if (!timeout.isActive()) return;
+        unlink(timeout);
+        insert(timeout, deadlineNanos);
+    }
+
+    // Cancel a pending timeout; a no-op if it already fired
+    void cancel(Timeout<T> timeout) {
+        if (timeout != null && timeout.isActive()) {
+            unlink(timeout);
+        }
+    }
+
+    // Fire every timeout whose tick has passed, in tick order
+    void advance(long nowNanos, Consumer<T> onExpired) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        while (currentTick < targetTick && size > 0) {
+            currentTick++;
+            int index = (int) (currentTick & mask);
+            Timeout<T> timeout = buckets[index];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= currentTick) { // Entries further out wait for a later lap
+                    unlink(timeout);
+                    onExpired.accept(timeout.payload);
+                }
+                timeout = next;
+            }
+        }
+        if (size == 0) {
+            currentTick = Math.max(currentTick, targetTick); // Skip idle ticks cheaply
+        }
+    }
+
+    // Milliseconds a selector may block before the next tick is due (0 = wait indefinitely)
+    long millisUntilNextTick(long nowNanos) {
+        if (size == 0) return 0;
+        long nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+        return Math.max(1, (nextTickNanos - nowNanos + 999_999) / 1_000_000);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void insert(Timeout<T> timeout, long deadlineNanos) {
+        long tick = Math.max(currentTick + 1, (deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+        int index = (int) (tick & mask);
+        timeout.deadlineTick = tick;
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = buckets[index];
+        if (timeout.next != null) timeout.next.prev = timeout;
+        buckets[index] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+}
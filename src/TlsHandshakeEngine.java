@@ -0,0 +1,390 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.security.auth.x500.X500Principal;
+
+// Collects the server certificate of TLS ports. Every handshake is an SSLEngine driven over a
+// non-blocking SocketChannel on one selector thread; the trust manager records the leaf
+// certificate and rejects it, which aborts the handshake before any key exchange finishes.
+// Nothing is ever trusted, so self-signed and expired certificates are reported like any other.
+// Connects are paced by the shared ScanThrottle and count toward its in-flight cap.
+final class TlsHandshakeEngine implements AutoCloseable {
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    // What a scan keeps of a server certificate
+    record PeerCertificate(String subject, List<String> subjectAltNames, String issuer, long notAfterMillis) {
+        // Common name of the subject, or the whole subject if it has none
+        String commonName() {
+            return PeerCertificate.commonName(subject);
+        }
+
+        String issuerName() {
+            return PeerCertificate.commonName(issuer);
+        }
+
+        boolean selfSigned() {
+            return subject.equals(issuer);
+        }
+
+        // Expiry as an ISO-8601 UTC timestamp
+        String notAfter() {
+            return Instant.ofEpochMilli(notAfterMillis).toString();
+        }
+
+        boolean expired() {
+            return notAfterMillis < System.currentTimeMillis();
+        }
+
+        static String commonName(String distinguishedName) {
+            for (String part : distinguishedName.split(",(?=[A-Za-z0-9.]+=)")) { // Commas inside values are escaped
+                if (part.regionMatches(true, 0, "CN=", 0, 3)) return part.substring(3);
+            }
+            return distinguishedName;
+        }
+    }
+
+    private final SSLContext sslContext;
+    private final ScanThrottle throttle; // Shared with the port engines
+    private final int timeoutMs;
+    private final int maxInFlight;
+    private final Selector selector;
+    private final Queue<Handshake> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    // Loop-thread state
+    private final Queue<Handshake> backlog = new ArrayDeque<>(); // Waiting for an in-flight slot
+    private final TimerWheel<Handshake> wheel = new TimerWheel<>(TICK_MILLIS, WHEEL_SIZE);
+    private Handshake current; // Handshake being driven, for the trust manager's callback
+    private int inFlight;
+
+    // One certificate fetch
+    private static final class Handshake {
+        final InetSocketAddress target;
+        final InetAddress source; // Local address to bind, null = any
+        final CompletableFuture<PeerCertificate> result = new CompletableFuture<>();
+        SocketChannel channel;
+        SSLEngine engine;
+        ByteBuffer netIn;
+        ByteBuffer netOut;
+        ByteBuffer appIn;
+        TimerWheel.Timeout<Handshake> timeout;
+        PeerCertificate certificate;
+        boolean done;
+
+        Handshake(InetSocketAddress target, InetAddress source) {
+            this.target = target;
+            this.source = source;
+        }
+    }
+
+    TlsHandshakeEngine(ScanThrottle throttle, int timeoutMs, int maxInFlight) throws IOException {
+        this.throttle = throttle;
+        this.timeoutMs = timeoutMs;
+        this.maxInFlight = maxInFlight;
+        try {
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] {new CapturingTrustManager()}, null);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("TLS unavailable", e);
+        }
+        selector = Selector.open();
+        loop = Thread.ofPlatform().name("tls-handshake-selector").daemon().start(this::run);
+    }
+
+    // Fetch the certificate of the TLS server on a host and port, connecting from source unless
+    // it is null. Completes with null if the port does not complete a TLS handshake in time.
+    // Blocks the caller only while the throttle holds it back.
+    CompletableFuture<PeerCertificate> fetch(InetAddress host, int port, InetAddress source) throws InterruptedException {
+        throttle.acquire(); // Paced here, on the caller, so the selector thread never blocks
+        Handshake handshake = new Handshake(new InetSocketAddress(host, port), source);
+        submitted.add(handshake);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+        return handshake.result;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(wheel.millisUntilNextTick(System.nanoTime()));
+                wakeupPending.set(false);
+                Handshake handshake;
+                while ((handshake = submitted.poll()) != null) {
+                    backlog.add(handshake);
+                }
+                processSelectedKeys();
+                wheel.advance(System.nanoTime(), expired -> finish(expired, null));
+                while (inFlight < maxInFlight && !backlog.isEmpty()) {
+                    start(backlog.poll());
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Selector failure ends the loop; outstanding handshakes are failed below
+        } finally {
+            failOutstanding();
+        }
+    }
+
+    private void start(Handshake handshake) {
+        inFlight++;
+        handshake.timeout = wheel.schedule(handshake, System.nanoTime() + timeoutMs * 1_000_000L); // Covers connect and handshake
+        try {
+            handshake.channel = SocketChannel.open();
+            handshake.channel.configureBlocking(false);
+            if (handshake.source != null) {
+                handshake.channel.bind(new InetSocketAddress(handshake.source, 0));
+            }
+            if (handshake.channel.connect(handshake.target)) {
+                connected(handshake);
+            } else {
+                handshake.channel.register(selector, SelectionKey.OP_CONNECT, handshake);
+            }
+        } catch (IOException e) {
+            finish(handshake, null);
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Handshake handshake = (Handshake) key.attachment();
+            try {
+                if (!key.isValid()) continue;
+                if (key.isConnectable()) {
+                    if (handshake.channel.finishConnect()) connected(handshake);
+                } else {
+                    drive(handshake);
+                }
+            } catch (IOException e) {
+                finish(handshake, handshake.certificate); // An aborted handshake may already have the certificate
+            }
+        }
+    }
+
+    // TCP connected: start the client side of the handshake. The host is an address literal,
+    // so no SNI is sent and the server presents its default certificate.
+    private void connected(Handshake handshake) throws IOException {
+        SSLEngine engine = sslContext.createSSLEngine(handshake.target.getAddress().getHostAddress(), handshake.target.getPort());
+        engine.setUseClientMode(true);
+        handshake.engine = engine;
+        handshake.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        handshake.netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize()).flip(); // Nothing to send yet
+        handshake.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        engine.beginHandshake();
+        drive(handshake);
+    }
+
+    // Run the handshake as far as the socket allows without blocking, then wait for the
+    // channel to become readable or writable again
+    private void drive(Handshake handshake) throws IOException {
+        current = handshake;
+        try {
+            SSLEngine engine = handshake.engine;
+            while (true) {
+                if (handshake.netOut.hasRemaining()) {
+                    handshake.channel.write(handshake.netOut);
+                    if (handshake.netOut.hasRemaining()) {
+                        interest(handshake, SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                if (handshake.certificate != null) {
+                    finish(handshake, handshake.certificate); // Got what we came for; drop the connection
+                    return;
+                }
+                switch (engine.getHandshakeStatus()) {
+                    case NEED_WRAP -> {
+                        handshake.netOut.clear();
+                        SSLEngineResult result = engine.wrap(EMPTY, handshake.netOut);
+                        handshake.netOut.flip();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED && !handshake.netOut.hasRemaining()) {
+                            throw new EOFException("TLS engine closed");
+                        }
+                    }
+                    case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> {
+                        handshake.netIn.flip();
+                        SSLEngineResult result = engine.unwrap(handshake.netIn, handshake.appIn);
+                        handshake.netIn.compact();
+                        handshake.appIn.clear(); // No application data is expected before the certificate
+                        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            int read = handshake.channel.read(handshake.netIn);
+                            if (read < 0) throw new EOFException("Connection closed during handshake");
+                            if (read == 0) {
+                                interest(handshake, SelectionKey.OP_READ);
+                                return;
+                            }
+                        } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new EOFException("TLS engine closed");
+                        }
+                    }
+                    case NEED_TASK -> {
+                        Runnable task;
+                        while ((task = engine.getDelegatedTask()) != null) {
+                            task.run(); // Certificate parsing and checks; cheap next to a blocking thread per host
+                        }
+                    }
+                    default -> {
+                        finish(handshake, handshake.certificate); // Finished without presenting a certificate
+                        return;
+                    }
+                }
+            }
+        } catch (SSLException e) {
+            finish(handshake, handshake.certificate); // Expected: our trust manager rejects every chain
+        } finally {
+            current = null;
+        }
+    }
+
+    private void interest(Handshake handshake, int ops) throws IOException {
+        SelectionKey key = handshake.channel.keyFor(selector);
+        if (key == null) {
+            handshake.channel.register(selector, ops, handshake);
+        } else {
+            key.interestOps(ops);
+        }
+    }
+
+    // Complete a handshake exactly once and free its slots
+    private void finish(Handshake handshake, PeerCertificate certificate) {
+        if (handshake.done) return;
+        handshake.done = true;
+        inFlight--;
+        throttle.release();
+        wheel.cancel(handshake.timeout);
+        if (handshake.channel != null) {
+            try {
+                handshake.channel.close(); // No close_notify: the peer sees a reset, like an abandoned connect
+            } catch (IOException ignored) {
+                // Nothing useful to do if close fails
+            }
+        }
+        handshake.result.complete(certificate);
+    }
+
+    private void failOutstanding() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            Handshake handshake = (Handshake) key.attachment();
+            finish(handshake, handshake.certificate);
+        }
+        Handshake handshake;
+        while ((handshake = backlog.poll()) != null) {
+            throttle.release(); // Acquired in fetch(), never started
+            handshake.result.complete(null);
+        }
+        while ((handshake = submitted.poll()) != null) {
+            throttle.release();
+            handshake.result.complete(null);
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    private static PeerCertificate summarize(X509Certificate certificate) {
+        List<String> names = new ArrayList<>();
+        try {
+            Collection<List<?>> alternatives = certificate.getSubjectAlternativeNames();
+            if (alternatives != null) {
+                for (List<?> name : alternatives) {
+                    int type = (Integer) name.get(0);
+                    if (type == 2 || type == 7) { // dNSName, iPAddress
+                        names.add((String) name.get(1));
+                    }
+                }
+            }
+        } catch (CertificateParsingException e) {
+            // Malformed extension; keep the subject and issuer
+        }
+        return new PeerCertificate(certificate.getSubjectX500Principal().getName(X500Principal.RFC2253), List.copyOf(names),
+            certificate.getIssuerX500Principal().getName(X500Principal.RFC2253), certificate.getNotAfter().getTime());
+    }
+
+    // Records the server's leaf certificate on the handshake being driven, then rejects it.
+    // Only ever called on the loop thread, from unwrap() or a delegated task.
+    private final class CapturingTrustManager extends X509ExtendedTrustManager {
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            capture(chain);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            capture(chain);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            capture(chain);
+        }
+
+        private void capture(X509Certificate[] chain) throws CertificateException {
+            if (current != null && chain.length > 0) {
+                current.certificate = summarize(chain[0]);
+            }
+            throw new CertificateException("Certificate recorded"); // Abort the handshake here
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            throw new CertificateException("Client certificates are not accepted");
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            throw new CertificateException("Client certificates are not accepted");
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            throw new CertificateException("Client certificates are not accepted");
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
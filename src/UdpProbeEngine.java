@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// UDP service prober. Every probe is a connected non-blocking DatagramChannel on one shared
+// selector loop: it sends a request the service must answer (a DNS query, an SNMP get, an NTP
+// client packet, an SSDP M-SEARCH, an mDNS query), counts a matching reply as open, and
+// an ICMP port-unreachable (PortUnreachableException on the connected channel) as closed.
+// Silence after the retries is open|filtered and is not reported.
+final class UdpProbeEngine implements AutoCloseable {
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512;
+    private static final short QUERY_ID = 0x5A4E; // DNS/mDNS transaction ID echoed in replies
+    // SNMPv2c GetRequest, community "public", for sysDescr.0 (1.3.6.1.2.1.1.1.0)
+    private static final byte[] SNMP_GET_SYSDESCR = {
+        0x30, 0x29, 0x02, 0x01, 0x01, 0x04, 0x06, 'p', 'u', 'b', 'l', 'i', 'c',
+        (byte) 0xA0, 0x1C, 0x02, 0x04, 0x5A, 0x4E, 0x00, 0x01, 0x02, 0x01, 0x00, 0x02, 0x01, 0x00,
+        0x30, 0x0E, 0x30, 0x0C, 0x06, 0x08, 0x2B, 0x06, 0x01, 0x02, 0x01, 0x01, 0x01, 0x00, 0x05, 0x00};
+
+    private final ScanThrottle throttle; // Shared with the TCP engine
+    private final int timeoutMs;
+    private final int retries;
+    private final Selector selector;
+    private final Queue<Probe> pending = new ConcurrentLinkedQueue<>();
+    private final TimerWheel<Probe> wheel = new TimerWheel<>(TICK_MILLIS, WHEEL_SIZE);
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(2048);
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    UdpProbeEngine(ScanThrottle throttle, int timeoutMs, int retries) throws IOException {
+        this.throttle = throttle;
+        this.timeoutMs = timeoutMs;
+        this.retries = retries;
+        selector = Selector.open();
+        loop = Thread.ofPlatform().name("udp-probe-selector").daemon().start(this::run);
+    }
+
+    // Probe every UDP port of a host; completes with the ports that answered, in ascending
+    // order (ports must be sorted). A non-null source binds the probes to that address.
+    CompletableFuture<int[]> scanPorts(InetAddress host, int[] ports, InetAddress source) throws InterruptedException {
+        HostBatch batch = new HostBatch(ports.length);
+        if (ports.length == 0) {
+            batch.result.complete(new int[0]);
+            return batch.result;
+        }
+        for (int port : ports) {
+            throttle.acquire(); // Paced here, on the caller, so the selector thread never blocks
+            pending.add(new Probe(new InetSocketAddress(host, port), source, batch));
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+        return batch.result;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // UDP probes of one host; only touched by the selector thread
+    private static final class HostBatch {
+        int[] open = new int[4];
+        int openCount;
+        int remaining;
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        HostBatch(int remaining) {
+            this.remaining = remaining;
+        }
+    }
+
+    // One service probe and its retries
+    private static final class Probe {
+        final InetSocketAddress target;
+        final InetAddress source; // Local address to bind, null = any
+        final HostBatch batch;
+        DatagramChannel channel;
+        TimerWheel.Timeout<Probe> timeout;
+        int attempts;
+        boolean done;
+
+        Probe(InetSocketAddress target, InetAddress source, HostBatch batch) {
+            this.target = target;
+            this.source = source;
+            this.batch = batch;
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(wheel.millisUntilNextTick(System.nanoTime()));
+                wakeupPending.set(false);
+                registerPending();
+                processSelectedKeys();
+                wheel.advance(System.nanoTime(), this::expired);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Selector failure ends the loop; outstanding probes are failed below
+        } finally {
+            failOutstanding();
+        }
+    }
+
+    private void registerPending() {
+        Probe probe;
+        while ((probe = pending.poll()) != null) {
+            try {
+                probe.channel = DatagramChannel.open();
+                probe.channel.configureBlocking(false);
+                if (probe.source != null) {
+                    probe.channel.bind(new InetSocketAddress(probe.source, 0));
+                }
+                probe.channel.connect(probe.target); // Connected, so ICMP errors reach this channel
+                probe.channel.register(selector, SelectionKey.OP_READ, probe);
+                send(probe);
+            } catch (IOException e) {
+                finish(probe, PortScanEngine.PortState.FILTERED); // e.g. no route to host
+            }
+        }
+    }
+
+    private void send(Probe probe) {
+        probe.attempts++;
+        try {
+            probe.channel.write(payload(probe.target.getPort()));
+        } catch (PortUnreachableException e) {
+            finish(probe, PortScanEngine.PortState.CLOSED); // ICMP from an earlier attempt
+            return;
+        } catch (IOException e) {
+            // Send failed; the deadline below retries or gives up
+        }
+        probe.timeout = wheel.schedule(probe, System.nanoTime() + timeoutMs * 1_000_000L);
+    }
+
+    private void expired(Probe probe) {
+        if (probe.attempts <= retries) {
+            send(probe); // UDP requests and replies may simply be lost
+        } else {
+            finish(probe, PortScanEngine.PortState.FILTERED);
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Probe probe = (Probe) key.attachment();
+            if (!key.isValid() || !key.isReadable()) continue;
+            try {
+                receiveBuffer.clear();
+                if (probe.channel.read(receiveBuffer) <= 0) continue;
+                receiveBuffer.flip();
+                if (matches(probe.target.getPort(), receiveBuffer)) {
+                    finish(probe, PortScanEngine.PortState.OPEN);
+                }
+                // Anything else is noise; keep waiting for a real reply
+            } catch (PortUnreachableException e) {
+                finish(probe, PortScanEngine.PortState.CLOSED);
+            } catch (IOException e) {
+                finish(probe, PortScanEngine.PortState.FILTERED);
+            }
+        }
+    }
+
+    // Complete a probe exactly once: cancel its deadline, close the channel, count the port
+    private void finish(Probe probe, PortScanEngine.PortState state) {
+        if (probe.done) return;
+        probe.done = true;
+        wheel.cancel(probe.timeout);
+        if (probe.channel != null) {
+            try {
+                probe.channel.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do if close fails
+            }
+        }
+        throttle.release();
+        HostBatch batch = probe.batch;
+        if (state == PortScanEngine.PortState.OPEN) {
+            if (batch.openCount == batch.open.length) batch.open = Arrays.copyOf(batch.open, batch.openCount * 2);
+            batch.open[batch.openCount++] = probe.target.getPort();
+        }
+        if (--batch.remaining == 0) {
+            Arrays.sort(batch.open, 0, batch.openCount); // Replies arrive out of order
+            batch.result.complete(Arrays.copyOf(batch.open, batch.openCount));
+        }
+    }
+
+    private void failOutstanding() {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            finish((Probe) key.attachment(), PortScanEngine.PortState.FILTERED);
+        }
+        Probe probe;
+        while ((probe = pending.poll()) != null) {
+            finish(probe, PortScanEngine.PortState.FILTERED);
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    // Request that makes the service on this port answer; other ports get a bare line break,
+    // since the JDK does not send empty datagrams
+    private static ByteBuffer payload(int port) {
+        return switch (port) {
+            case 53 -> dnsQuery("", 2, 1); // NS for the root zone: answered (or refused) by any DNS server
+            case 123 -> ntpRequest();
+            case 161 -> ByteBuffer.wrap(SNMP_GET_SYSDESCR);
+            case 1900 -> ByteBuffer.wrap(("M-SEARCH * HTTP/1.1\r\nHOST: 239.255.255.250:1900\r\n"
+                + "MAN: \"ssdp:discover\"\r\nMX: 1\r\nST: ssdp:all\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            case 5353 -> dnsQuery("_services._dns-sd._udp.local", 12, 1); // Legacy unicast query, answered by unicast
+            default -> ByteBuffer.wrap(new byte[] {'\r', '\n'});
+        };
+    }
+
+    // Whether a datagram is a genuine reply of the service probed on this port
+    private static boolean matches(int port, ByteBuffer reply) {
+        return switch (port) {
+            case 53, 5353 -> reply.remaining() >= 12 && reply.getShort(0) == QUERY_ID && (reply.get(2) & 0x80) != 0;
+            case 123 -> reply.remaining() >= 48 && (reply.get(0) & 0x07) == 4; // Mode 4: server
+            case 161 -> reply.remaining() >= 2 && reply.get(0) == 0x30; // BER SEQUENCE: an SNMP message
+            case 1900 -> startsWith(reply, "HTTP/1.1 200");
+            default -> true; // Any answer at all proves something is listening
+        };
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, String prefix) {
+        if (buffer.remaining() < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(buffer.position() + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer dnsQuery(String name, int type, int queryClass) {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putShort(QUERY_ID).putShort((short) 0x0100) // Recursion desired
+            .putShort((short) 1).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        if (!name.isEmpty()) {
+            for (String label : name.split("\\.")) {
+                byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+                buffer.put((byte) bytes.length).put(bytes);
+            }
+        }
+        buffer.put((byte) 0).putShort((short) type).putShort((short) queryClass);
+        return buffer.flip();
+    }
+
+    private static ByteBuffer ntpRequest() {
+        ByteBuffer buffer = ByteBuffer.allocate(48);
+        buffer.put(0, (byte) 0x1B); // LI 0, version 3, mode 3 (client)
+        return buffer;
+    }
+}